@@ -0,0 +1,19 @@
+package logbrowser.app;
+
+/**
+ * Receives the downloaded files while a download is running (see LogBrowser.download()).
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public interface DownloadListener {
+
+	/**
+	 * A log file has been downloaded.
+	 * Called from the threads that download the files, as soon as every file is downloaded.
+	 * @param name : the name of the downloaded file
+	 * @param size : the size of the downloaded file in bytes
+	 * @param millis : the duration of the download
+	 */
+	public void downloaded(String name, long size, long millis);
+}
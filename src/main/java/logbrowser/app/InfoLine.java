@@ -9,9 +9,14 @@
 public class InfoLine {
 	public enum Type {FILE,LINE};
 	
+	public static final int NO_COUNT = -1;
+	
 	private Type type; 
 	private LogFile file;
 	private LogLine line;
+	private int count = NO_COUNT;
+	private int shown;
+	private boolean complete = true;
 
 	/**
 	 * Constructor of a header line, showing info of the log file.
@@ -20,6 +25,20 @@ public InfoLine(LogFile file) {
 		this.file = file;
 		this.type = Type.FILE;
 	}
+
+	/**
+	 * Constructor of a header line, showing info of the log file and the results of the search in it.
+	 * @param file
+	 * @param count : the number of lines that match the query
+	 * @param shown : the number of lines shown after the header
+	 * @param complete : false if the search stopped before the end of the file (the count is a minimum)
+	 */
+	public InfoLine(LogFile file, int count, int shown, boolean complete) {
+		this(file);
+		this.count = count;
+		this.shown = shown;
+		this.complete = complete;
+	}
 	
 	/**
 	 * Constructor of a detail line, showing info of a line of the log file.
@@ -41,4 +60,19 @@ public LogLine getLine() {
 	public Type getType() {
 		return type;
 	}
+
+	/**
+	 * @return the number of lines of the file that match the query, or NO_COUNT (only for headers of searches)
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	public int getShown() {
+		return shown;
+	}
+
+	public boolean isComplete() {
+		return complete;
+	}
 }
@@ -2,22 +2,47 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 
 import com.jcraft.jsch.JSchException;
 
+import logbrowser.app.fileread.AbstractReadFile;
+import logbrowser.app.fileread.ContentCache;
+import logbrowser.app.fileread.FileCache;
+import logbrowser.app.fileread.FileInfo;
+import logbrowser.app.fileread.IndexStore;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.SearchLimits;
+import logbrowser.app.search.TimeWindow;
 import logbrowser.config.AppConfig;
 import logbrowser.config.Config;
 import logbrowser.config.LogConfig;
@@ -36,17 +61,29 @@ public class LogBrowser {
 	// The location of the configuration file:
 	public static final String CONFIG_FILE = "./config.xml";  
 
+	// The extension of the downloads to an archive (see downloadZip()):
+	public static final String ZIP_EXTENSION = ".zip";
+
 	private String downloadBaseFolder;
 	private String downloadExtension;
+	private boolean downloadCompressed;
+	private boolean downloadZip;
+	private int searchMaxLinesPerFile;
+	private int searchMaxLines;
 	private Map<String, AppConfig> apps;
 	private List<String> appNames;
 	
 	private LogFileFactory logFileFactory;
+	private ContentCache contentCache;
+	private SearchExecutor searchExecutor;
 
-	// Current search results & parameters: 
+	// Results & parameters of the last search that has ended (see setResults()):
 	private List<LogFile> logFiles;
+	// The key of the host of every log file (see hostKey()):
+	private List<String> logFileHosts;
 	private Date fromDate, toDate;
 	private String appName;
+	private Query query;
 	
 	/**
 	 * Constructor: load the application configuration.
@@ -70,6 +107,10 @@ public LogBrowser() throws JAXBException, LogBrowserException {
 		
 		this.downloadBaseFolder = config.getDownloadBaseFolder();
 		this.downloadExtension = config.getDownloadExtension();
+		this.downloadCompressed = config.isDownloadCompressed();
+		this.downloadZip = config.isDownloadZip();
+		this.searchMaxLinesPerFile = config.getSearchMaxLinesPerFile();
+		this.searchMaxLines = config.getSearchMaxLines();
 		
 		// Load the apps in the Map, with its names:
 		apps = new TreeMap<>();
@@ -80,8 +121,34 @@ public LogBrowser() throws JAXBException, LogBrowserException {
             logger.debug("\tapp '{}' with {} logs", appConfig.getName(), appConfig.getLogs().size());
 		}
 		
-		logFileFactory = new LogFileFactory(config.getDateFormat());
+		// Cache of the remote files (optional):
+		FileCache cache = null;
+		if (config.getCacheFolder() != null && !config.getCacheFolder().trim().isEmpty()) {
+			try {
+				cache = new FileCache(new File(config.getCacheFolder()), config.getCacheMaxSize() * 1024 * 1024);
+			} catch (IOException e) {
+				throw new LogBrowserException("Cannot create the cache folder " + config.getCacheFolder() + ": " + e.getMessage());
+			}
+		}
+
+		// Indexes of the files of past dates (optional):
+		IndexStore indexStore = null;
+		if (config.getIndexFolder() != null && !config.getIndexFolder().trim().isEmpty()) {
+			try {
+				indexStore = new IndexStore(new File(config.getIndexFolder()), config.getIndexMaxSize() * 1024 * 1024);
+			} catch (IOException e) {
+				throw new LogBrowserException("Cannot create the index folder " + config.getIndexFolder() + ": " + e.getMessage());
+			}
+		}
+
+		// Lines of the opened files, in memory and in temporary copies:
+		contentCache = new ContentCache(config.getContentCacheMaxSize() * 1024 * 1024,
+										config.getContentCacheMaxDiskSize() * 1024 * 1024);
+
+		logFileFactory = new LogFileFactory(config.getDateFormat(), cache, indexStore, contentCache);
+		searchExecutor = new SearchExecutor(config.getSearchThreads(), config.getSearchThreadsPerHost());
 		logFiles = new ArrayList<>();
+		logFileHosts = new ArrayList<>();
 	}
 	
 	/**
@@ -92,18 +159,55 @@ public List<String> getAppNames() {
 		return appNames;
 	}
 
+	/**
+	 * Return the query of the last search that has ended (for highlighting the results).
+	 * @return the compiled query, or null if no text was searched
+	 */
+	public Query getQuery() {
+		return query;
+	}
+
+	/**
+	 * Return the limits of the results of a search, as configured.
+	 * @param firstLines : stop reading the files when a limit is reached
+	 * @param countOnly : only count the found lines
+	 * @return new limits, for a search
+	 */
+	public SearchLimits createLimits(boolean firstLines, boolean countOnly) {
+		return new SearchLimits(searchMaxLinesPerFile, searchMaxLines, firstLines, countOnly);
+	}
+
+	/**
+	 * Search, with the configured limits.
+	 * @see #search(String, Date, Date, String, boolean, TimeWindow, SearchLimits, SearchListener)
+	 */
+	public List<InfoLine> search(String appName, Date fromDate, Date toDate, String text, boolean ignoreCase) throws IOException, JSchException, LogBrowserException {
+		return search(appName, fromDate, toDate, text, ignoreCase, null, createLimits(false, false), null);
+	}
+
 	/**
 	 * Search.
+	 * The log files of every Log Configuration are found, and searched, concurrently (see SearchExecutor);
+	 * the results are returned in the order of the configuration, and given to the listener as soon as they are ready.
+	 * If the thread is interrupted, the search is cancelled: the files that are being read are closed.
+	 * The header of every file shows how many lines match the query; only the lines within the limits are returned,
+	 * the first ones in the order of the files.
 	 * @param appName
 	 * @param fromDate
 	 * @param toDate
-	 * @param text
+	 * @param text : the query (see Query), or null to find only the log files
+	 * @param ignoreCase : ignore the case of the ASCII letters
+	 * @param window : only the lines of this time window are searched, in every date (null for all the lines).
+	 * 		Only in the files with a timestamp format (see LogConfig.getTimestampFormat()).
+	 * @param limits : the limits of the results (see createLimits())
+	 * @param listener : receives the results while the search is running (can be null)
 	 * @return a List of LogInfoLine objects with the found results
 	 * @throws IOException
 	 * @throws JSchException
 	 * @throws LogBrowserException
 	 */
-	public List<InfoLine> search(String appName, Date fromDate, Date toDate, String text) throws IOException, JSchException, LogBrowserException {
+	public List<InfoLine> search(String appName, final Date fromDate, final Date toDate, String text, boolean ignoreCase,
+								 final TimeWindow window, final SearchLimits limits, final SearchListener listener) throws IOException, JSchException, LogBrowserException {
 
 		// Validations:
 		if (text != null && text.trim().length() == 0) {
@@ -117,45 +221,131 @@ public List<InfoLine> search(String appName, Date fromDate, Date toDate, String
 			throw new LogBrowserException("Date From cannot be after Date To");
 		}
 		
-		// Reset the search results & parameters:
-		this.logFiles.clear();
-		this.fromDate = fromDate;
-		this.toDate = toDate;
-		this.appName = appName;
-        
-		// Prepare the results information:
+		// The query is compiled once for all the files:
+		final Query query = text == null ? null : Query.parse(text, ignoreCase);
+		if (listener != null) {
+			listener.started(query);
+		}
+
+		// Find the Log Files of every Log Configuration:
+		List<LogConfig> logConfigs = apps.get(appName).getLogs();
+		List<Future<List<LogFile>>> builds = new ArrayList<>();
+		for (final LogConfig logConfig : logConfigs) {
+			builds.add(searchExecutor.submit(hostKey(logConfig), new Callable<List<LogFile>>() {
+				@Override
+				public List<LogFile> call() throws Exception {
+					return logFileFactory.build(fromDate, toDate, logConfig);
+				}
+			}));
+		}
+
+		// SEARCH every Log File:
+		List<Future<FoundLines>> searches = new ArrayList<>();
+		List<LogFile> logFiles = new ArrayList<>();
+		List<String> logFileHosts = new ArrayList<>();
 		List<InfoLine> infoLines = new ArrayList<>();
+		try {
+			for (int i = 0; i < logConfigs.size(); i++) {
+				List<LogFile> found = SearchExecutor.get(builds.get(i));
+				if (listener != null) {
+					listener.filesFound(found.size());
+				}
+				for (final LogFile logFile : found) {
+					logFiles.add(logFile);
+					logFileHosts.add(hostKey(logConfigs.get(i)));
 
-		// SEARCH every Log Configuration:
-		for (LogConfig logConfig : apps.get(appName).getLogs()) {
-			
-			// ...every Log File:
-			for (LogFile logFile : logFileFactory.build(fromDate, toDate, logConfig)) {
-				logFiles.add(logFile);
-				logger.info("Searching on file {}", logFile.getName());
+					// If no text searched, there is nothing to search in the file:
+					if (query != null) {
+						searches.add(searchExecutor.submit(hostKey(logConfigs.get(i)), new Callable<FoundLines>() {
+							@Override
+							public FoundLines call() throws Exception {
+								logger.info("Searching on file {}", logFile.getName());
+								FoundLines results = logFile.search(query, window, limits.newFoundLines());
+								if (listener != null) {
+									FileInfo info = logFile.getInfo();
+									listener.searched(info == null ? FileInfo.UNKNOWN_SIZE : info.getSize());
+								}
+								return results;
+							}
+						}));
+					}
+				}
+			}
 
-				// If no text searched:
-				if (text == null || text.trim().length() == 0) {
+			// Prepare the results information, in the order of the files:
+			int remaining = limits.getMaxLines();
+			for (int i = 0; i < logFiles.size(); i++) {
+				LogFile logFile = logFiles.get(i);
+				List<InfoLine> fileLines = new ArrayList<>();
+
+				if (query == null) {
 					// Return only header:
-					infoLines.add(new InfoLine(logFile));
-					continue;
-				}
-				
-				// Search the text in the file:
-				List<LogLine> results = logFile.search(text);
-				if (!results.isEmpty()) {
-					// Header:
-					infoLines.add(new InfoLine(logFile));
-					// Details:
-					for (LogLine line : results) {
-						infoLines.add(new InfoLine(logFile, line));
+					fileLines.add(new InfoLine(logFile));
+				} else {
+					FoundLines results = SearchExecutor.get(searches.get(i));
+					// Header, with the count of found lines (also without lines, if the search stopped before
+					// the end of the file: "0+" lines, eg: when the global limit was reached by the previous files):
+					if (results.getCount() > 0 || !results.isComplete()) {
+						List<LogLine> lines = results.getLines();
+						int shown = Math.min(lines.size(), remaining);
+						remaining -= shown;
+						fileLines.add(new InfoLine(logFile, results.getCount(), shown, results.isComplete()));
+						// Details:
+						for (LogLine line : lines.subList(0, shown)) {
+							fileLines.add(new InfoLine(logFile, line));
+						}
 					}
 				}
+				infoLines.addAll(fileLines);
+				if (listener != null) {
+					listener.found(fileLines);
+				}
 			}
+		} catch (IOException | JSchException | LogBrowserException | RuntimeException e) {
+			// Don't leave tasks running for a failed search, and don't keep the results of the previous one:
+			SearchExecutor.cancel(builds);
+			SearchExecutor.cancel(searches);
+			setResults(new ArrayList<>(), new ArrayList<>(), fromDate, toDate, appName, null);
+			throw e;
 		}
+		logger.debug("Content cache: {}", contentCache);
+		setResults(logFiles, logFileHosts, fromDate, toDate, appName, query);
 		return infoLines;
 	}
 
+	/**
+	 * Keep the results of a search that has ended, for the next actions (eg: download).
+	 * They are only set at the end of the search, so a cancelled search that is still ending can't modify
+	 * the results of the previous one while they are used.
+	 */
+	private void setResults(List<LogFile> logFiles, List<String> logFileHosts, Date fromDate, Date toDate,
+							String appName, Query query) {
+		this.logFiles = logFiles;
+		this.logFileHosts = logFileHosts;
+		this.fromDate = fromDate;
+		this.toDate = toDate;
+		this.appName = appName;
+		this.query = query;
+	}
+
+	/**
+	 * Return the cache of the lines of the opened files, with its statistics (hits, misses...).
+	 * @return
+	 */
+	public ContentCache getContentCache() {
+		return contentCache;
+	}
+
+	/**
+	 * The key used to limit the concurrent tasks against the same host.
+	 */
+	private static String hostKey(LogConfig logConfig) {
+		if (logConfig.getType() == LogConfig.Type.LOCAL) {
+			return LogConfig.Type.LOCAL.name();
+		}
+		return logConfig.getType() + ":" + logConfig.getHost();
+	}
+
 	/**
 	 * Prepare the folder where the files will be downloaded
 	 * @return the folder
@@ -174,30 +364,163 @@ public File prepareDownload() throws LogBrowserException {
 		String folderName = downloadBaseFolder + appName + "_" + dateString;   
 	
 		File folder = new File(folderName);
-		if (folder.exists()) {
+		if (getDownloadTarget(folder).exists()) {
 			throw new FolderExistsException(folder);
 		}
 		return folder;
 	}
 
+	/**
+	 * Return where the files of a download folder are written: the folder, or its archive with downloadZip.
+	 * @param folder : see prepareDownload()
+	 * @return the folder or the archive
+	 */
+	public File getDownloadTarget(File folder) {
+		return downloadZip ? new File(folder.getPath() + ZIP_EXTENSION) : folder;
+	}
+
 	/**
 	 * Download the currently found files to the specified folder.
+	 * The files are downloaded concurrently, with the same limits of threads per host as the searches (see SearchExecutor).
+	 * Every file is written to a partial file that is renamed when it is complete; the partial files of a download
+	 * that was interrupted are kept when the folder is overwritten, and their files continue from where they were
+	 * (see ReadFile.copy()).
+	 * With downloadCompressed in the configuration, the compressed files are downloaded as they are stored
+	 * (see ReadFile.copyCompressed()).
+	 * With downloadZip in the configuration, the files are downloaded to an archive instead (see downloadZip()).
+	 * If the thread is interrupted, the download is cancelled.
 	 * @param folder
 	 * @param overwriteFolder
+	 * @param listener : receives every downloaded file (can be null)
 	 * @return the number of downloaded files
 	 * @throws IOException
+	 * @throws JSchException
+	 * @throws LogBrowserException
 	 */
-	public int download(File folder, boolean overwriteFolder) throws IOException {
+	public int download(File folder, boolean overwriteFolder, final DownloadListener listener) throws IOException, JSchException, LogBrowserException {
+		if (downloadZip) {
+			return downloadZip(getDownloadTarget(folder), folder.getName(), listener);
+		}
 		if (folder.exists() && overwriteFolder) {
-			FileUtils.deleteDirectory(folder);
+			File[] files = folder.listFiles();
+			for (File file : files == null ? new File[0] : files) {
+				if (!file.getName().endsWith(AbstractReadFile.PARTIAL_EXTENSION)) {
+					FileUtils.forceDelete(file);
+				}
+			}
 		}
 		folder.mkdir();
 
 		// Download files:
-		for (LogFile logFile : logFiles) {
-			logFile.download(folder, downloadExtension);
+		Set<File> taken = new HashSet<>();
+		List<Future<Void>> downloads = new ArrayList<>();
+		try {
+			for (int i = 0; i < logFiles.size(); i++) {
+				final LogFile logFile = logFiles.get(i);
+				final File destFile = logFile.getDownloadFile(folder, downloadExtension, downloadCompressed, taken);
+				downloads.add(searchExecutor.submit(logFileHosts.get(i), new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						logger.info("Downloading file {} to {}", logFile.getName(), destFile);
+						long start = System.currentTimeMillis();
+						logFile.download(destFile, downloadCompressed);
+						if (listener != null) {
+							listener.downloaded(destFile.getName(), destFile.length(), System.currentTimeMillis() - start);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> download : downloads) {
+				SearchExecutor.get(download);
+			}
+		} catch (IOException | JSchException | LogBrowserException | RuntimeException e) {
+			// Don't leave tasks running for a failed download:
+			SearchExecutor.cancel(downloads);
+			throw e;
 		}
 		return logFiles.size();
 	}
-}
 
+	/**
+	 * Download the currently found files to a zip archive, without writing them to the disk before.
+	 * Every file is compressed while it is read, in the threads of the download (with the same limits of threads
+	 * per host as the searches), to a temporary file (see ScatterZipOutputStream); the compressed files are written
+	 * to the archive in order, while the rest of the files are still being compressed.
+	 * The archive is written to a partial file that is renamed when it is complete.
+	 * With downloadCompressed, the compressed files are stored in the archive as they are, without compressing them again.
+	 * If the thread is interrupted, the download is cancelled.
+	 * @param zipFile
+	 * @param folderName : the folder of the files in the archive
+	 * @param listener : receives every downloaded file (can be null)
+	 * @return the number of downloaded files
+	 * @throws IOException
+	 * @throws JSchException
+	 * @throws LogBrowserException
+	 */
+	private int downloadZip(File zipFile, String folderName, final DownloadListener listener) throws IOException, JSchException, LogBrowserException {
+		File partial = new File(zipFile.getPath() + AbstractReadFile.PARTIAL_EXTENSION);
+		File folder = new File(folderName);
+		Set<File> taken = new HashSet<>();
+		List<Future<ScatterZipOutputStream>> downloads = new ArrayList<>();
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(partial)) {
+			for (int i = 0; i < logFiles.size(); i++) {
+				final LogFile logFile = logFiles.get(i);
+				final String name = logFile.getDownloadFile(folder, downloadExtension, downloadCompressed, taken).getName();
+				downloads.add(searchExecutor.submit(logFileHosts.get(i), new Callable<ScatterZipOutputStream>() {
+					@Override
+					public ScatterZipOutputStream call() throws Exception {
+						logger.info("Downloading file {} to {}", logFile.getName(), zipFile);
+						long start = System.currentTimeMillis();
+						File temp = File.createTempFile("logbrowser", ZIP_EXTENSION);
+						temp.deleteOnExit();
+						ScatterZipOutputStream scatter = ScatterZipOutputStream.fileBased(temp, Deflater.BEST_SPEED);
+						try {
+							ZipArchiveEntry entry = new ZipArchiveEntry(folderName + "/" + name);
+							entry.setMethod(downloadCompressed && logFile.isCompressed() ? ZipEntry.STORED : ZipEntry.DEFLATED);
+							FileInfo info = logFile.getInfo();
+							if (info != null && info.getLastModified() != FileInfo.UNKNOWN_DATE) {
+								entry.setTime(info.getLastModified());
+							}
+							final CountingInputStream content = new CountingInputStream(logFile.openDownload(downloadCompressed));
+							scatter.addArchiveEntry(ZipArchiveEntryRequest.createZipArchiveEntryRequest(entry, () -> content));
+							if (listener != null) {
+								listener.downloaded(name, content.getByteCount(), System.currentTimeMillis() - start);
+							}
+							return scatter;
+						} catch (IOException | RuntimeException e) {
+							// Remove the temporary file:
+							scatter.close();
+							throw e;
+						}
+					}
+				}));
+			}
+			for (Future<ScatterZipOutputStream> download : downloads) {
+				try (ScatterZipOutputStream scatter = SearchExecutor.get(download)) {
+					scatter.writeTo(zip);
+				}
+			}
+		} catch (IOException | JSchException | LogBrowserException | RuntimeException e) {
+			// Don't leave tasks running for a failed download, nor their temporary files:
+			SearchExecutor.cancel(downloads);
+			for (Future<ScatterZipOutputStream> download : downloads) {
+				if (download.isDone() && !download.isCancelled()) {
+					try {
+						IOUtils.closeQuietly(SearchExecutor.get(download));
+					} catch (IOException | JSchException | LogBrowserException | RuntimeException failed) {
+						// Nothing to close
+					}
+				}
+			}
+			partial.delete();
+			throw e;
+		}
+		try {
+			Files.move(partial.toPath(), zipFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(partial.toPath(), zipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return logFiles.size();
+	}
+}
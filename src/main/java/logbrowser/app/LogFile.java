@@ -2,12 +2,17 @@
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStream;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 
+import logbrowser.app.fileread.FileInfo;
+import logbrowser.app.fileread.Lines;
 import logbrowser.app.fileread.ReadFile;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TimeWindow;
 
 /**
  * This class represents an existing log file.
@@ -23,76 +28,140 @@ public class LogFile {
 	
 	private String hostAlias;
 	private String name;
-	private List<LogLine> logLines;
 	private ReadFile readFile;
+	private String timestampFormat;
 	
-	public LogFile(String name, String hostAlias, ReadFile readFile) {
+	/**
+	 * Constructor
+	 * @param name
+	 * @param hostAlias
+	 * @param readFile : the reading strategy
+	 * @param timestampFormat : the format of the timestamp at the start of the lines (null if unknown)
+	 */
+	public LogFile(String name, String hostAlias, ReadFile readFile, String timestampFormat) {
 		this.name = name;
 		this.hostAlias = hostAlias;
 		this.readFile = readFile;
-		
-		logLines = new ArrayList<>();
+		this.timestampFormat = timestampFormat;
 	}
 
 	/**
-	 * Searchs in the file for a given text, and loads the lines that contain the text. 
-	 * @param text
-	 * @return true if the text has been found, false otherwise
+	 * Searchs in the file, and returns the lines that match the query.
+	 * If the file has already been opened, the search is done in its lines in the content cache (see ContentCache);
+	 * otherwise the file is scanned by the reading strategy, without loading it.
+	 * The time window is only applied if the format of the timestamps of the file is known.
+	 * @param query : the compiled search
+	 * @param window : only the lines of this time window are searched (null for all the lines)
+	 * @param foundLines : where the lines that match the query are added (with the limits of the search, see SearchLimits)
+	 * @return foundLines
 	 * @throws IOException 
 	 */
-	public List<LogLine> search(String text) throws IOException {
-		if (logLines.isEmpty()) {
-			logLines = readFile.read();
+	public FoundLines search(Query query, TimeWindow window, FoundLines foundLines) throws IOException {
+		// The limits may have been reached by other files:
+		if (foundLines.isStopped()) {
+			return foundLines;
 		}
-
-		List<LogLine> foundLines = new ArrayList<>();
-		for (LogLine logLine : logLines) {
-			if (logLine.getText().contains(text)) {
-				foundLines.add(logLine);
-			}
+		window = window == null || timestampFormat == null ? null : window.withFormat(timestampFormat);
+		// Don't open an empty file:
+		FileInfo info = readFile.getInfo();
+		if (info != null && info.getSize() == 0) {
+			return foundLines;
 		}
-		return foundLines;
+		return readFile.search(query, window, foundLines);
 	}
 	
 	/**
-	 * Returns the content of the file.
-	 * If not yet read, reads the file (using the reading strategy)
-	 * @return
+	 * Returns the content of the file, kept in memory (see LineStore).
+	 * The lines are shared with the other instances of the file while they are in the content cache (see ContentCache).
+	 * @return the lines, that must be closed when they are no longer used
 	 * @throws IOException
 	 */
-	public List<LogLine> getLogLines() throws IOException {
-		if (logLines.isEmpty()) {
-			logLines = readFile.read();
-		}
-		return logLines;
+	public Lines getLogLines() throws IOException {
+		return readFile.read();
 	}
 
 	/**
-	 * Downloads the file into the specified folder:
+	 * Returns the lines of the file, that are read on demand (eg: for showing the file in a table).
+	 * The file is indexed (see ReadFile.index()) unless its lines are in the content cache (see ContentCache).
+	 * @return the lines, that must be closed when they are no longer used (eg: when the tab of the file is closed)
+	 * @throws IOException
+	 */
+	public Lines getLineIndex() throws IOException {
+		return readFile.index();
+	}
+
+	/**
+	 * The file where this file is downloaded, in a folder: its name, with the alias of the host and the extension
+	 * (and the extension of its compression, when it is downloaded compressed).
 	 * @param folder
 	 * @param extension
-	 * @throws IOException
+	 * @param compressed : if the file is downloaded as it is stored (see download())
+	 * @param taken : the files of the folder already given to other downloads (the new file is added)
+	 * @return a file that doesn't exist yet
 	 */
-	public void download(File folder, String extension) throws IOException {
+	public File getDownloadFile(File folder, String extension, boolean compressed, Set<File> taken) {
 		
 		String newName = hostAlias == null ? name : name + "_" + hostAlias;
 
 		if (!StringUtils.isEmpty(extension) && !newName.endsWith(extension)) {
 			newName += extension;
 		}
+		String compressionName = compressed && readFile.getCompression() != null ? readFile.getCompression().getFileName() : "";
 		
-		File destFile = new File(folder + "/" + newName);
+		File destFile = new File(folder + "/" + newName + compressionName);
 		
 		// There could be several logs with the same name:
 		int count = 1;
-		while (destFile.exists()) {
+		while (destFile.exists() || taken.contains(destFile)) {
 			String fixedPart = newName.substring(0, newName.lastIndexOf(extension));
-			String changedName = fixedPart + "(" + count + ")" + extension; 
+			String changedName = fixedPart + "(" + count + ")" + extension + compressionName; 
 			
 			destFile = new File(folder + "/" + changedName);
 			count++;
 		}
-		readFile.copy(destFile);
+		taken.add(destFile);
+		return destFile;
+	}
+
+	/**
+	 * Downloads the file (see ReadFile.copy()).
+	 * @param destFile : see getDownloadFile()
+	 * @param compressed : if the file is copied as it is stored, without decompressing it (see ReadFile.copyCompressed())
+	 * @throws IOException
+	 */
+	public void download(File destFile, boolean compressed) throws IOException {
+		if (compressed) {
+			readFile.copyCompressed(destFile);
+		} else {
+			readFile.copy(destFile);
+		}
+	}
+
+	/**
+	 * Opens the content of the file, to download it to an archive (see ReadFile.open()).
+	 * @param compressed : if the content is read as it is stored, without decompressing it
+	 * @return an InputStream that must be closed by the caller
+	 * @throws IOException
+	 */
+	public InputStream openDownload(boolean compressed) throws IOException {
+		return readFile.open(compressed);
+	}
+
+	/**
+	 * Return if the file is compressed (see LogConfig.Compression).
+	 * @return
+	 */
+	public boolean isCompressed() {
+		return readFile.getCompression() != null;
+	}
+
+	/**
+	 * Return the metadata of the file (size, date of modification...), as provided by the server.
+	 * @return the metadata, or null if the file doesn't exist
+	 * @throws IOException
+	 */
+	public FileInfo getInfo() throws IOException {
+		return readFile.getInfo();
 	}
 
 	/** 
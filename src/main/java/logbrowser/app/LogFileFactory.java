@@ -1,18 +1,26 @@
 package logbrowser.app;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.time.DateUtils;
 
 import com.jcraft.jsch.JSchException;
 
+import logbrowser.app.fileread.AbstractReadFile;
+import logbrowser.app.fileread.ContentCache;
+import logbrowser.app.fileread.FileCache;
+import logbrowser.app.fileread.IndexStore;
 import logbrowser.app.fileread.ReadFile;
 import logbrowser.app.fileread.ReadFileHttp;
 import logbrowser.app.fileread.ReadFileLocal;
@@ -37,14 +45,31 @@ class LogFileFactory {
 	public static final String PATH_SEPARATOR = "/";
 
 	private String dateFormat;
+	private FileCache cache;
+	private IndexStore indexStore;
+	private ContentCache contentCache;
 
-	LogFileFactory(String dateFormat) {
+	/**
+	 * Constructor
+	 * @param dateFormat : the format of the dates in the names of the files
+	 * @param cache : the cache for the remote files (null if the remote files are not cached)
+	 * @param indexStore : the store of the indexes of the files of past dates (null if the files are not indexed)
+	 * @param contentCache : the cache of the lines of the opened files
+	 */
+	LogFileFactory(String dateFormat, FileCache cache, IndexStore indexStore, ContentCache contentCache) {
 		this.dateFormat = dateFormat;
+		this.cache = cache;
+		this.indexStore = indexStore;
+		this.contentCache = contentCache;
 	};
 	
 	/**
 	 * This is going to build one LogFile for each date, 
 	 * And, also, if the file can be found compressed, one compressed LogFile for eache date.
+	 * The files of dates before today have already been rotated and don't change: they are indexed (see IndexStore).
+	 * 
+	 * To know if a file exists, the directory of the file is listed (once for all the dates), and the names are 
+	 * looked up in the listing; only when the directory cannot be listed the file is checked one by one. 
 	 *  
 	 * @param fromDate
 	 * @param toDate
@@ -56,6 +81,7 @@ class LogFileFactory {
 	 */
 	List<LogFile> build(Date fromDate, Date toDate, LogConfig logConfig) throws LogBrowserException, IOException, JSchException {
 	    Calendar calendar = new GregorianCalendar();
+	    Date today = DateUtils.truncate(new Date(), Calendar.DATE);
 		List<LogFile> logFiles = new ArrayList<>();
 		
 		// Common parameters for all files in this LogConfig:
@@ -65,17 +91,22 @@ List<LogFile> build(Date fromDate, Date toDate, LogConfig logConfig) throws LogB
 		String user = logConfig.getUser();
 		String pwd = logConfig.getPwd();
 		String basedir = logConfig.getBasedir();
-		LogConfig.Compression canBeCompressed = logConfig.getCanBeCompressed();
+		List<LogConfig.Compression> canBeCompressed = logConfig.getCanBeCompressed();
+		String timestampFormat = logConfig.getTimestampFormat();
+		boolean remoteGrep = logConfig.isRemoteGrep();
+
+		// Names of the files in every listed directory (null if the directory cannot be listed):
+		Map<String, Set<String>> listings = new HashMap<>();
 
 		// For each logfile definition in the configuration...
 		for (String file : logConfig.getFiles()) {
 
 			// First, discard files without dateholder when searching for files from a certain date:
 			if (!file.contains(DATE_HOLDER)) {
-				ReadFile readFile = buildStrategy(type, host, user, pwd, basedir, file, null);
-				if (readFile.exists()) {
+				ReadFile readFile = buildStrategy(type, host, user, pwd, basedir, file, null, remoteGrep);
+				if (exists(readFile, logConfig, basedir + file, listings)) {
 					String name = file.contains(PATH_SEPARATOR) ? file.substring(file.lastIndexOf(PATH_SEPARATOR) + 1) : file;
-					logFiles.add(new LogFile(name, alias, readFile));
+					logFiles.add(new LogFile(name, alias, readFile, timestampFormat));
 				}
 			} else {
 				// For each date selected...
@@ -84,27 +115,24 @@ List<LogFile> build(Date fromDate, Date toDate, LogConfig logConfig) throws LogB
 					Date date = calendar.getTime();
 					String path = file;
 
-					// First, discard files without dateholder when searching for files from a certain date:
-					if (!path.contains(DATE_HOLDER)) {
-						calendar.add(Calendar.DATE, 1);
-						continue;
-					}
-
 					// Build the name of the LogFile with the date:
 					String dateString = new SimpleDateFormat(dateFormat).format(date);
 					path = path.replaceAll(DATE_HOLDER_EXPR, dateString);
+					String name = path.contains(PATH_SEPARATOR) ? path.substring(path.lastIndexOf(PATH_SEPARATOR) + 1) : path;
 
 					// Prepare the strategy:
 					ReadFile readFile = null;
+					boolean rotated = DateUtils.truncate(date, Calendar.DATE).before(today);
 
-					// 1. First try the compressed version of the file:
+					// 1. First try the compressed versions of the file, in the order of the configuration:
 					if (canBeCompressed != null) {
-
-						readFile = buildStrategy(type, host, user, pwd, basedir, path, canBeCompressed);
-						if (readFile.exists()) {
-							String name = path.contains(PATH_SEPARATOR) ? path.substring(path.lastIndexOf(PATH_SEPARATOR) + 1) : path;
-							logFiles.add(new LogFile(name, alias, readFile));
-						} else {
+						for (LogConfig.Compression compression : canBeCompressed) {
+							readFile = buildStrategy(type, host, user, pwd, basedir, path, compression, remoteGrep);
+							if (exists(readFile, logConfig, basedir + path + compression.getFileName(), listings)) {
+								setIndexStore(readFile, rotated);
+								logFiles.add(new LogFile(name, alias, readFile, timestampFormat));
+								break;
+							}
 							readFile = null;
 						}
 					}
@@ -112,10 +140,10 @@ List<LogFile> build(Date fromDate, Date toDate, LogConfig logConfig) throws LogB
 					// 2. Normal version of the file:
 					if (readFile == null) {
 
-						readFile = buildStrategy(type, host, user, pwd, basedir, path, null);
-						if (readFile.exists()) {
-							String name = path.contains(PATH_SEPARATOR) ? path.substring(path.lastIndexOf(PATH_SEPARATOR) + 1) : path;
-							logFiles.add(new LogFile(name, alias, readFile));
+						readFile = buildStrategy(type, host, user, pwd, basedir, path, null, remoteGrep);
+						if (exists(readFile, logConfig, basedir + path, listings)) {
+							setIndexStore(readFile, rotated);
+							logFiles.add(new LogFile(name, alias, readFile, timestampFormat));
 						}
 					}
 
@@ -127,9 +155,67 @@ List<LogFile> build(Date fromDate, Date toDate, LogConfig logConfig) throws LogB
 		return logFiles;
 	}
 
+	/**
+	 * Index the files that don't change any more.
+	 * @param readFile
+	 * @param rotated : the file is of a past date
+	 */
+	private void setIndexStore(ReadFile readFile, boolean rotated) {
+		if (indexStore != null && rotated && readFile instanceof AbstractReadFile) {
+			((AbstractReadFile) readFile).setIndexStore(indexStore);
+		}
+	}
+
+	/**
+	 * Check if a file exists: look for its name in the listing of its directory or, if the directory cannot be 
+	 * listed, ask the reading strategy.
+	 * @param readFile : the reading strategy of the file
+	 * @param logConfig
+	 * @param fullPath : the path of the file, including the basedir
+	 * @param listings : the directories already listed
+	 * @return true if the file exists
+	 * @throws IOException
+	 */
+	private boolean exists(ReadFile readFile, LogConfig logConfig, String fullPath, Map<String, Set<String>> listings) throws IOException {
+		int pos = fullPath.lastIndexOf(PATH_SEPARATOR);
+		String dir = fullPath.substring(0, pos + 1);
+		String name = fullPath.substring(pos + 1);
+
+		if (!listings.containsKey(dir)) {
+			listings.put(dir, list(logConfig, dir));
+		}
+		Set<String> listing = listings.get(dir);
+		return listing == null ? readFile.exists() : listing.contains(name);
+	}
+
+	/**
+	 * List the names of the files of a directory.
+	 * @param logConfig
+	 * @param dir
+	 * @return the names of the files, or null if the directory cannot be listed
+	 */
+	private Set<String> list(LogConfig logConfig, String dir) {
+		try {
+			switch(logConfig.getType()) {
+			case HTTP:
+			case HTTPS:
+				return ReadFileHttp.list(buildUrl(logConfig.getType(), logConfig.getHost(), dir), logConfig.getUser(), logConfig.getPwd());
+			case SSH:
+				return ReadFileSsh.list(logConfig.getHost(), logConfig.getUser(), logConfig.getPwd(), dir.isEmpty() ? "." : dir);
+			case LOCAL:
+				return ReadFileLocal.list(dir.isEmpty() ? "." : dir);
+			default:
+				return null;
+			}
+		} catch (IOException e) {
+			logger.debug("Cannot list {}, the files will be checked one by one: {}", dir, e.getMessage());
+			return null;
+		}
+	}
+
 	private ReadFile buildStrategy(LogConfig.Type type, String host, String user, String pwd, String basedir, String path,
-			LogConfig.Compression compressed) throws LogBrowserException, IOException, JSchException {
-		ReadFile readFile;
+			LogConfig.Compression compressed, boolean remoteGrep) throws LogBrowserException, IOException, JSchException {
+		AbstractReadFile readFile;
 
 		if (compressed != null) {
 			path += compressed.getFileName();
@@ -138,20 +224,16 @@ private ReadFile buildStrategy(LogConfig.Type type, String host, String user, St
 		// Build the Reading Strategy:
 		switch(type) {
 		case HTTP:
-			String access = host.toLowerCase().startsWith("http") ? "" : "HTTP://";
-			URL url = new URL(access + host + basedir + path);
-			readFile = new ReadFileHttp(url, compressed, user, pwd);
-			break;
 		case HTTPS:
-			access = host.toLowerCase().startsWith("https") ? "" : "HTTPS://";
-			url = new URL(access + host + basedir + path);
-			readFile = new ReadFileHttp(url, compressed, user, pwd);
+			ReadFileHttp readFileHttp = new ReadFileHttp(buildUrl(type, host, basedir + path), compressed, user, pwd);
+			readFileHttp.setCache(cache);
+			readFile = readFileHttp;
 			break;
 		case SSH:
-			if (compressed != null) {
-				throw new LogBrowserException("SSH compressed files are not implemented");
-			}
-			readFile = new ReadFileSsh(host, user, pwd, (basedir == null ? path : basedir + path));
+			ReadFileSsh readFileSsh = new ReadFileSsh(host, user, pwd, (basedir == null ? path : basedir + path), compressed);
+			readFileSsh.setCache(cache);
+			readFileSsh.setRemoteGrep(remoteGrep);
+			readFile = readFileSsh;
 			break;
 		case LOCAL:
 			readFile = new ReadFileLocal(basedir + path, compressed);
@@ -159,6 +241,17 @@ private ReadFile buildStrategy(LogConfig.Type type, String host, String user, St
 		default:
 			throw new LogBrowserException("Invalid type: " + type);
 		}
+		readFile.setContentCache(contentCache);
 		return readFile;
 	}
+
+	private URL buildUrl(LogConfig.Type type, String host, String path) throws MalformedURLException {
+		String access;
+		if (type == LogConfig.Type.HTTPS) {
+			access = host.toLowerCase().startsWith("https") ? "" : "HTTPS://";
+		} else {
+			access = host.toLowerCase().startsWith("http") ? "" : "HTTP://";
+		}
+		return new URL(access + host + path);
+	}
 }
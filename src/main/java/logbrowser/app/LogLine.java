@@ -9,7 +9,9 @@
  */
  public class LogLine {
 
-	private LogFile logFile;
+	// The number of a line read from a position of the file, without reading the lines before it:
+	public static final int NO_LINE_NUMBER = -1;
+
 	private int lineNumber;
 	private String text;
 	
@@ -18,14 +20,6 @@ public LogLine(int lineNumber, String text) {
 		this.text = text;
 	}
 
-	public void setLogFile(LogFile logFile) {
-		this.logFile = logFile;
-	}
-	
-	public LogFile getLogFile() {
-		return logFile;
-	}
-
 	public int getLineNumber() {
 		return lineNumber;
 	}
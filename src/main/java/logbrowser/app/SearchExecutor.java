@@ -0,0 +1,159 @@
+package logbrowser.app;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jcraft.jsch.JSchException;
+
+/**
+ * Executor of the tasks of a search (finding the log files, searching in them...).
+ * The tasks are run concurrently, with a limit of threads for the whole application and a limit of tasks
+ * running at the same time against the same host.
+ * The tasks that exceed the limit of their host wait in a queue, without blocking a thread.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+class SearchExecutor {
+
+	public static final int DEFAULT_THREADS = 8;
+	public static final int DEFAULT_THREADS_PER_HOST = 4;
+
+	private ExecutorService executor;
+	private int threadsPerHost;
+	private Map<String, HostQueue> hosts;
+
+	/**
+	 * Tasks running and waiting for a host.
+	 */
+	private static class HostQueue {
+		int running;
+		Deque<Runnable> waiting = new ArrayDeque<>();
+	}
+
+	/**
+	 * Constructor
+	 * @param threads : max. number of tasks running at the same time (DEFAULT_THREADS if not positive)
+	 * @param threadsPerHost : max. number of tasks running at the same time against a host (DEFAULT_THREADS_PER_HOST if not positive)
+	 */
+	SearchExecutor(int threads, int threadsPerHost) {
+		this.threadsPerHost = threadsPerHost > 0 ? threadsPerHost : DEFAULT_THREADS_PER_HOST;
+		this.hosts = new HashMap<>();
+		this.executor = Executors.newFixedThreadPool(threads > 0 ? threads : DEFAULT_THREADS, new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "search-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Submit a task to be run against a host.
+	 * @param host : the key of the host (tasks with the same key share the limit of threads per host)
+	 * @param task
+	 * @return the Future of the task
+	 */
+	<T> Future<T> submit(final String host, Callable<T> task) {
+		final FutureTask<T> future = new FutureTask<>(task);
+		Runnable runnable = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.run();
+				} finally {
+					next(host);
+				}
+			}
+		};
+
+		synchronized (hosts) {
+			HostQueue queue = hosts.get(host);
+			if (queue == null) {
+				queue = new HostQueue();
+				hosts.put(host, queue);
+			}
+			if (queue.running < threadsPerHost) {
+				queue.running++;
+				executor.execute(runnable);
+			} else {
+				queue.waiting.add(runnable);
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * A task of the host has finished: run the next waiting task of the same host.
+	 */
+	private void next(String host) {
+		synchronized (hosts) {
+			HostQueue queue = hosts.get(host);
+			Runnable runnable = queue.waiting.poll();
+			if (runnable != null) {
+				executor.execute(runnable);
+			} else {
+				queue.running--;
+			}
+		}
+	}
+
+	/**
+	 * Cancel the tasks that have not finished yet.
+	 * The running tasks are interrupted: the files they are reading are closed (see AbstractReadFile.openContent()).
+	 * @param futures
+	 */
+	static void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Wait for the result of a task, throwing the exception thrown by the task (if any).
+	 * @param future
+	 * @return the result of the task
+	 * @throws IOException
+	 * @throws JSchException
+	 * @throws LogBrowserException
+	 */
+	static <T> T get(Future<T> future) throws IOException, JSchException, LogBrowserException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LogBrowserException("Search interrupted");
+		} catch (CancellationException e) {
+			throw new LogBrowserException("Search cancelled");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof JSchException) {
+				throw (JSchException) cause;
+			} else if (cause instanceof LogBrowserException) {
+				throw (LogBrowserException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else {
+				throw new LogBrowserException(String.valueOf(cause));
+			}
+		}
+	}
+}
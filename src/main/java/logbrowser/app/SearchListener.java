@@ -0,0 +1,42 @@
+package logbrowser.app;
+
+import java.util.List;
+
+import logbrowser.app.search.Query;
+
+/**
+ * Receives the results of a search while it is running (see LogBrowser.search()).
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public interface SearchListener {
+
+	/**
+	 * The search has started, with its compiled query (eg: for highlighting the results).
+	 * Called from the thread that runs the search.
+	 * @param query : the query, or null if only the log files are found
+	 */
+	public void started(Query query);
+
+	/**
+	 * New log files have been found, that will be searched.
+	 * Called from the thread that runs the search.
+	 * @param count
+	 */
+	public void filesFound(int count);
+
+	/**
+	 * The results of a log file are ready.
+	 * Called in the order of the files, from the thread that runs the search.
+	 * @param infoLines : the header of the file and its found lines (empty if nothing was found in the file)
+	 */
+	public void found(List<InfoLine> infoLines);
+
+	/**
+	 * A log file has been searched.
+	 * Called from the threads that search the files, as soon as every file is searched.
+	 * @param size : the size of the searched file in bytes, or FileInfo.UNKNOWN_SIZE
+	 */
+	public void searched(long size);
+}
@@ -0,0 +1,695 @@
+package logbrowser.app.fileread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.LiteralMatcher;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TimeWindow;
+import logbrowser.app.search.TokenIndex;
+import logbrowser.app.search.TrigramFilter;
+import logbrowser.app.search.TrigramFilterBuilder;
+import logbrowser.config.LogConfig;
+
+/**
+ * Common implementation of the ReadFile strategies.
+ * The subclasses only have to provide the access to the content of the file (openStream),
+ * reading, searching and copying the content is the same for all the types of files.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public abstract class AbstractReadFile implements ReadFile {
+
+	/**
+	 * Extension of the files that are being copied (see copy()).
+	 */
+	public static final String PARTIAL_EXTENSION = ".part";
+
+	private static final int MAX_READ_LINES_RATIO = 64;
+	private static final int SEEK_BLOCK_SIZE = 64 * 1024;
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	protected LogConfig.Compression compression;
+	protected FileCache cache;
+	protected IndexStore indexStore;
+	protected ContentCache contentCache;
+
+	protected AbstractReadFile(LogConfig.Compression compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Set the cache where a local copy of the file is kept (only for remote files).
+	 * @param cache
+	 */
+	public void setCache(FileCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Set the store where the index of the file is kept (only for files that don't change, eg: the files of past dates).
+	 * @param indexStore
+	 */
+	public void setIndexStore(IndexStore indexStore) {
+		this.indexStore = indexStore;
+	}
+
+	/**
+	 * Set the cache where the lines of the file are kept in memory when the file is opened (see read() and index()).
+	 * @param contentCache
+	 */
+	public void setContentCache(ContentCache contentCache) {
+		this.contentCache = contentCache;
+	}
+
+	/**
+	 * The identity of the file in the cache.
+	 * @return the key, or null if the file must not be cached
+	 */
+	protected String getKey() {
+		return null;
+	}
+
+	/**
+	 * The identity of the file in the index store.
+	 * @return the key
+	 */
+	protected String getIndexKey() {
+		return getKey();
+	}
+
+	/**
+	 * Open the content of the file as it is stored (compressed or not).
+	 * @return an InputStream that must be closed by the caller
+	 * @throws IOException
+	 */
+	protected abstract InputStream openStream() throws IOException;
+
+	/**
+	 * @return true if the file can be opened from a position without reading the bytes before it (see openStream(long))
+	 */
+	protected boolean canReadFrom() {
+		return false;
+	}
+
+	/**
+	 * Open the content of the file as it is stored, from a position.
+	 * By default, the bytes before the position are read and skipped (see canReadFrom()).
+	 * @param position
+	 * @return an InputStream that must be closed by the caller
+	 * @throws IOException
+	 */
+	protected InputStream openStream(long position) throws IOException {
+		InputStream is = openStream();
+		try {
+			IOUtils.skipFully(is, position);
+		} catch (IOException e) {
+			is.close();
+			throw e;
+		}
+		return is;
+	}
+
+	/**
+	 * Read a block of the file (as it is stored), without reading the rest of the file.
+	 * @param position : the start of the block
+	 * @param block : filled with the block, until its limit or the end of the file
+	 * @return the number of bytes read, or -1 if the file cannot be read by blocks
+	 * @throws IOException
+	 */
+	protected int readBlock(long position, ByteBuffer block) throws IOException {
+		return -1;
+	}
+
+	/**
+	 * Open the content of the file as it is stored, from the local copy in the cache when it is up to date.
+	 * Otherwise, the file is copied in the cache while it is read.
+	 * @return an InputStream that must be closed by the caller
+	 * @throws IOException
+	 */
+	protected InputStream openCachedStream() throws IOException {
+		String key = getKey();
+		if (cache == null || key == null) {
+			return openStream();
+		}
+		FileInfo info = getInfo();
+		InputStream is = cache.open(key, info);
+		if (is == null) {
+			is = cache.fill(key, info, openStream());
+		}
+		return is;
+	}
+
+	/**
+	 * Open the content of the file, decompressing it when required.
+	 * The content can be interrupted: if the thread that reads it is interrupted (eg: the search is cancelled),
+	 * the file is closed, even if the thread is blocked waiting for the server, and the read fails.
+	 * @return an InputStream that must be closed by the caller
+	 * @throws IOException
+	 */
+	protected InputStream openContent() throws IOException {
+		InputStream is = Channels.newInputStream(Channels.newChannel(openCachedStream()));
+		if (compression == null) {
+			return is;
+		}
+		try {
+			return decompress(is, compression);
+		} catch (IOException e) {
+			is.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Decompress a stream. The files of several compressed members (or frames) are decompressed completely.
+	 * GZIP is decompressed in other threads (see GzipContentStream); the rest of the formats are decompressed
+	 * while they are read.
+	 * @param is : the compressed content
+	 * @param compression
+	 * @return the decompressed content
+	 * @throws IOException if the content is not in the format
+	 */
+	static InputStream decompress(InputStream is, LogConfig.Compression compression) throws IOException {
+		switch (compression) {
+		case GZ:
+			return new GzipContentStream(is);
+		case BZ2:
+			return new BZip2CompressorInputStream(new BufferedInputStream(is, BUFFER_SIZE), true);
+		case LZ4:
+			return new FramedLZ4CompressorInputStream(new BufferedInputStream(is, BUFFER_SIZE), true);
+		case ZST:
+			return new ZstdInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+		default:
+			throw new IOException("Invalid compression: " + compression);
+		}
+	}
+
+	/**
+	 * Open the content of the file, building its filter while it is read.
+	 * @param filterBuilder : the builder of the filter (null if the filter is not built)
+	 * @return an InputStream that must be closed by the caller
+	 * @throws IOException
+	 */
+	private InputStream openContent(TrigramFilterBuilder filterBuilder) throws IOException {
+		InputStream is = openContent();
+		return filterBuilder == null ? is : new FilterBuilderInputStream(is, filterBuilder);
+	}
+
+	/**
+	 * @return the metadata of the file, or null if the file has no index store or it cannot be indexed
+	 * @throws IOException
+	 */
+	private FileInfo getIndexInfo() throws IOException {
+		if (indexStore == null || !LineScanner.isSupported()) {
+			return null;
+		}
+		FileInfo info = getInfo();
+		return indexStore.isIndexable(info) ? info : null;
+	}
+
+	/**
+	 * @param info : the metadata of the file (null if it cannot be indexed)
+	 * @return a builder for the filter of the file, or null if it has a valid filter or it cannot be indexed
+	 */
+	private TrigramFilterBuilder newFilterBuilder(FileInfo info) {
+		if (info == null || indexStore.openFilter(getIndexKey(), info) != null) {
+			return null;
+		}
+		return new TrigramFilterBuilder();
+	}
+
+	private void saveFilter(FileInfo info, TrigramFilterBuilder filterBuilder) {
+		if (filterBuilder != null) {
+			indexStore.saveFilter(getIndexKey(), info, filterBuilder.build());
+		}
+	}
+
+	/**
+	 * @return a reference to the lines of the file in the content cache (to be closed by the caller),
+	 *         or null if they are not there or they are not up to date
+	 * @throws IOException
+	 */
+	private Lines getCachedLines() throws IOException {
+		String key = getIndexKey();
+		if (contentCache == null || key == null || !contentCache.contains(key)) {
+			return null;
+		}
+		return contentCache.get(key, getInfo());
+	}
+
+	/**
+	 * Keep the lines of the file in the content cache (the cache takes its own reference).
+	 * @param version : the metadata of the file before it was read
+	 * @param lines
+	 */
+	private void putCachedLines(FileInfo version, Lines lines) {
+		String key = getIndexKey();
+		if (contentCache != null && key != null) {
+			contentCache.put(key, version, lines);
+		}
+	}
+
+	// ReadFile implementation --------------------------------------------------------
+
+	/**
+	 * The lines are kept in a LineStore, sized for the file when it is not compressed.
+	 * If the file has a content cache, the lines are taken from it when they are up to date, and kept in it otherwise.
+	 * If the file has an index store, its filter is built while it is read.
+	 */
+	@Override
+	public Lines read() throws IOException {
+		Lines cached = getCachedLines();
+		if (cached != null) {
+			return cached;
+		}
+		FileInfo info = getIndexInfo();
+		TrigramFilterBuilder filterBuilder = newFilterBuilder(info);
+		FileInfo version = getInfo();
+		long capacity = compression != null || version == null || version.getSize() == FileInfo.UNKNOWN_SIZE ? 0 : version.getSize();
+
+		LineStore lines;
+		try (InputStream is = openContent(filterBuilder)) {
+			lines = LineStore.read(is, capacity);
+		}
+		saveFilter(info, filterBuilder);
+		putCachedLines(version, lines);
+		return lines;
+	}
+
+	/**
+	 * The lines are scanned as they arrive from the stream: only the lines that match the query are kept,
+	 * so the memory used does not depend on the size of the file.
+	 * The prefilter of the query is searched in the bytes, and only the lines that contain it are decoded (see LineScanner).
+	 * When the search is stopped, the stream is closed without reading the rest of the file.
+	 *
+	 * If the file has an index store, the file is not read at all when its filter shows that no line can match
+	 * (see Query.mayMatch()), and only the candidate lines given by its index are read (see readLines());
+	 * if it has not been indexed yet, the index and the filter are built while it is scanned.
+	 *
+	 * With a time window, only the lines of the window are scanned, and the scan stops after the window.
+	 * If the file can be read by blocks, the reading starts near the window (see seek()).
+	 *
+	 * If the lines of the file are in the content cache, they are searched there (see Lines.search()).
+	 */
+	@Override
+	public FoundLines search(Query query, TimeWindow window, FoundLines foundLines) throws IOException {
+		Lines cached = getCachedLines();
+		if (cached != null) {
+			try {
+				return cached.search(query, window, foundLines);
+			} finally {
+				cached.close();
+			}
+		}
+		if (LineScanner.isSupported()) {
+			LineScanner scanner = new LineScanner(query, foundLines);
+			scanner.setTimeWindow(window);
+
+			FileInfo info = getIndexInfo();
+			TrigramFilter filter = info == null ? null : indexStore.openFilter(getIndexKey(), info);
+			if (filter != null && !query.mayMatch(filter)) {
+				return foundLines;
+			}
+
+			// The index and the filter are built only when the whole file is scanned:
+			if (info != null && window == null) {
+				TokenIndex index = indexStore.open(getIndexKey(), info);
+				BitSet candidates = index == null ? null : query.candidates(index);
+				// Read the candidates only if they are less than 1 of every MAX_READ_LINES_RATIO lines
+				// (otherwise scanning the whole file is faster):
+				if (candidates != null && candidates.cardinality() <= index.getLineCount() / MAX_READ_LINES_RATIO) {
+					readLines(index, candidates, query, foundLines);
+					return foundLines;
+				}
+				if (index == null) {
+					scanner.setIndexBuilder(indexStore.newIndexBuilder());
+				}
+				if (filter == null) {
+					scanner.setFilterBuilder(new TrigramFilterBuilder());
+				}
+			}
+
+			long position = window == null ? 0 : seek(window);
+			if (position > 0) {
+				scanner.setUnnumbered();
+				try (InputStream is = Channels.newInputStream(Channels.newChannel(openStream(position)))) {
+					scanner.scan(is);
+				}
+			} else {
+				scan(scanner);
+			}
+			// Only the files that have been read until their end are indexed:
+			if (foundLines.isComplete()) {
+				if (scanner.getIndexBuilder() != null) {
+					indexStore.save(getIndexKey(), info, scanner.getIndexBuilder().build());
+				}
+				saveFilter(info, scanner.getFilterBuilder());
+			}
+			return foundLines;
+		}
+
+		// Charsets that can't be scanned as bytes:
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(openContent()))) {
+			String line;
+			for (int i = 0; !foundLines.isStopped() && (line = reader.readLine()) != null; i++) {
+				int position = window == null ? 0 : window.compare(line);
+				if (position > 0) {
+					break;
+				}
+				if (position == 0 && query.matches(line)) {
+					foundLines.add(i, line);
+				}
+			}
+		}
+		return foundLines;
+	}
+
+	/**
+	 * Find a line before a time window, with a binary search on the timestamps of some blocks of the file
+	 * (see TimeWindow.seek()). Only uncompressed files that are not cached and can be read by blocks and from a position
+	 * are sought.
+	 * @param window
+	 * @return the start of a line before the first line of the window, or 0
+	 * @throws IOException
+	 */
+	protected long seek(TimeWindow window) throws IOException {
+		FileInfo info = getInfo();
+		if (compression != null || (cache != null && getKey() != null) || !canReadFrom() ||
+			info == null || info.getSize() == FileInfo.UNKNOWN_SIZE) {
+			return 0;
+		}
+		// The lines before lo are before the window:
+		long lo = 0;
+		long hi = info.getSize();
+		ByteBuffer block = ByteBuffer.allocate(SEEK_BLOCK_SIZE);
+		while (hi - lo > SEEK_BLOCK_SIZE) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedIOException("Search cancelled");
+			}
+			long mid = lo + (hi - lo) / 2;
+			block.clear();
+			int length = readBlock(mid - 1, block);
+			if (length == -1) {
+				return 0;
+			}
+
+			// The first line with timestamp that starts in the block:
+			int start = LiteralMatcher.indexOf(block, LineScanner.LF, 0, length) + 1;
+			int limit = LineScanner.lastIndexOf(block, LineScanner.LF, 0, length) + 1;
+			int line = start == 0 ? limit : window.seek(block, start, limit, 0);
+			if (line < limit && window.getTime(block, line, limit) < window.getFrom()) {
+				lo = mid - 1 + line;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Scan the whole content of the file.
+	 * Uncompressed files with an up to date copy in the cache are scanned mapping the copy in memory
+	 * (see MappedFileScanner).
+	 * @param scanner
+	 * @throws IOException
+	 */
+	protected void scan(LineScanner scanner) throws IOException {
+		String key = getKey();
+		File cached = compression != null || cache == null || key == null ? null : cache.getLocalFile(key, getInfo());
+		if (cached != null) {
+			new MappedFileScanner(cached).scan(scanner);
+			return;
+		}
+		try (InputStream is = openContent()) {
+			scanner.scan(is);
+		}
+	}
+
+	/**
+	 * Read some lines of the file, and add the ones that match the query.
+	 * The content is skipped until every line.
+	 * @param index : the index of the file, with the position of the lines
+	 * @param lines : the lines to read
+	 * @param query
+	 * @param foundLines
+	 * @throws IOException
+	 */
+	protected void readLines(TokenIndex index, BitSet lines, Query query, FoundLines foundLines) throws IOException {
+		Charset charset = Charset.defaultCharset();
+		byte[] bytes = new byte[1024];
+		long position = 0;
+
+		try (InputStream is = openContent()) {
+			for (int line = lines.nextSetBit(0); line != -1 && !foundLines.isStopped(); line = lines.nextSetBit(line + 1)) {
+				if (Thread.currentThread().isInterrupted()) {
+					throw new InterruptedIOException("Search cancelled");
+				}
+				long start = index.getStart(line);
+				int length = (int) (index.getEnd(line) - start);
+				if (length > bytes.length) {
+					bytes = new byte[Math.max(length, bytes.length * 2)];
+				}
+				IOUtils.skipFully(is, start - position);
+				IOUtils.readFully(is, bytes, 0, length);
+				position = start + length;
+
+				String text = LineScanner.decode(ByteBuffer.wrap(bytes), 0, length, charset);
+				if (query.matches(text)) {
+					foundLines.add(line, text);
+				}
+			}
+		}
+	}
+
+	/**
+	 * If the file has a content cache, the lines are taken from it when they are up to date (they can be a LineStore,
+	 * see read()), and the new index is kept in it otherwise. The caller gets its own reference to the lines
+	 * (the cache keeps another one), so the index is closed when both of them are closed.
+	 */
+	@Override
+	public Lines index() throws IOException {
+		Lines cached = getCachedLines();
+		if (cached != null) {
+			return cached;
+		}
+		FileInfo version = getInfo();
+		LineIndex index = buildIndex();
+		putCachedLines(version, index);
+		return index;
+	}
+
+	/**
+	 * The content is copied (uncompressed) to a temporary file, that is removed when the index is closed.
+	 * @return the index
+	 * @throws IOException
+	 */
+	protected LineIndex buildIndex() throws IOException {
+		File temp = File.createTempFile("logbrowser", ".log");
+		temp.deleteOnExit();
+		try {
+			copy(temp);
+			return new LineIndex(temp, true);
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * The content is written to a partial file next to the destination, that is renamed when it is complete.
+	 * If a previous copy of the same version of the file was interrupted, the copy continues from the end of its
+	 * partial file (only for uncompressed files that can be read from a position, see canReadFrom()).
+	 * If the file has an index store, its filter is built while it is copied (only when it is copied from the start).
+	 */
+	@Override
+	public void copy(File destFile) throws IOException {
+		copy(destFile, true);
+	}
+
+	/**
+	 * The compressed content is copied like an uncompressed file (it can be continued, see copy()).
+	 */
+	@Override
+	public void copyCompressed(File destFile) throws IOException {
+		copy(destFile, compression == null);
+	}
+
+	/**
+	 * The content can be interrupted, like the content that is searched (see openContent()).
+	 */
+	@Override
+	public InputStream open(boolean compressed) throws IOException {
+		if (compressed && compression != null) {
+			return Channels.newInputStream(Channels.newChannel(openCachedStream()));
+		}
+		return openContent();
+	}
+
+	@Override
+	public LogConfig.Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Copy the file, decompressed or as it is stored.
+	 * When the file as it is stored is in a local file (see getLocalCopy()), it is copied with FileChannel.transferTo(),
+	 * without reading it through a stream (unless its filter must be built).
+	 * @param destFile
+	 * @param decompress
+	 * @throws IOException
+	 */
+	private void copy(File destFile, boolean decompress) throws IOException {
+		// The bytes of the copy are the bytes of the file as it is stored:
+		boolean stored = compression == null || !decompress;
+		FileInfo version = getInfo();
+		boolean resumable = stored && version != null &&
+							(version.getEtag() != null || version.getLastModified() != FileInfo.UNKNOWN_DATE);
+		File partial = getPartialFile(destFile, resumable ? version : null);
+		long position = resumable ? partial.length() : 0;
+		File local = stored ? getLocalCopy() : null;
+		InputStream input = null;
+		if (local != null) {
+			if (position > local.length()) {
+				position = 0;
+			}
+		} else if (position > 0 && canReadFrom()) {
+			try {
+				input = Channels.newInputStream(Channels.newChannel(openStream(position)));
+			} catch (IOException e) {
+				// Eg: the server doesn't accept ranges, copy it again:
+				position = 0;
+			}
+		} else {
+			position = 0;
+		}
+
+		FileInfo info = null;
+		TrigramFilterBuilder filterBuilder = null;
+		if (position == 0 && decompress) {
+			info = getIndexInfo();
+			filterBuilder = newFilterBuilder(info);
+		}
+
+		if (local != null && filterBuilder == null) {
+			transfer(local, position, partial);
+		} else {
+			if (input == null) {
+				input = decompress ? openContent(filterBuilder) : open(true);
+			}
+			try (InputStream is = input; OutputStream os = new FileOutputStream(partial, position > 0)) {
+				IOUtils.copyLarge(is, os, new byte[BUFFER_SIZE]);
+			}
+		}
+		try {
+			Files.move(partial.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(partial.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		saveFilter(info, filterBuilder);
+	}
+
+	/**
+	 * The file as it is stored, when it is available in a local file (eg: an up to date copy in the cache).
+	 * @return the local file, or null if there is none
+	 * @throws IOException
+	 */
+	protected File getLocalCopy() throws IOException {
+		String key = getKey();
+		return cache == null || key == null ? null : cache.getLocalFile(key, getInfo());
+	}
+
+	/**
+	 * Copy a local file from a position to the end of another file, with FileChannel.transferTo()
+	 * (the operating system copies the bytes directly, eg: with sendfile, without copying them to the JVM).
+	 * @param source
+	 * @param position : the position of the source, and the size of the target (0 to replace it)
+	 * @param target
+	 * @throws IOException
+	 */
+	private static void transfer(File source, long position, File target) throws IOException {
+		try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+			 FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+												position > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			while (position < size) {
+				position += in.transferTo(position, size - position, out);
+			}
+		}
+	}
+
+	/**
+	 * The partial file of a copy: its name identifies the file and its version (metadata), so a partial file
+	 * is only continued while the file has not changed.
+	 * @param destFile
+	 * @param version : the metadata of the file (null if the copy can't be continued)
+	 * @return the partial file, next to the destination
+	 */
+	private File getPartialFile(File destFile, FileInfo version) {
+		String hash = FileCache.hash(getIndexKey() + "\n" + version).substring(0, 12);
+		return new File(destFile.getParentFile(), destFile.getName() + "." + hash + PARTIAL_EXTENSION);
+	}
+
+	/**
+	 * A stream that adds the bytes read to the filter of the file.
+	 */
+	private static class FilterBuilderInputStream extends FilterInputStream {
+		private TrigramFilterBuilder filterBuilder;
+
+		FilterBuilderInputStream(InputStream in, TrigramFilterBuilder filterBuilder) {
+			super(in);
+			this.filterBuilder = filterBuilder;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count = super.read(b, off, len);
+			if (count > 0) {
+				filterBuilder.add(b, off, count);
+			}
+			return count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// The skipped bytes must be read:
+			return IOUtils.skip(this, n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package logbrowser.app.fileread;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The lines of the files that have been opened (see ReadFile.read() and ReadFile.index()), kept in memory
+ * between searches and shared by all the instances of the same file (eg: the files found again by a new search).
+ *
+ * Every entry is kept with the metadata of the file when it was read (size, date, ETag), and it is only used
+ * while the metadata of the file is the same. The memory used by every entry is estimated (see Lines.getMemorySize()),
+ * and the size of its temporary file is counted apart (see Lines.getDiskSize()); when any of the totals exceeds
+ * its maximum, the least recently used entries are removed.
+ *
+ * The cache keeps its own reference to the lines, and every user of the lines gets another one (see get()),
+ * that it must close. When an entry is removed, the reference of the cache is closed, so the lines are released
+ * (eg: the temporary file is removed) when they are no longer used by anyone (eg: when the tabs of the file are closed).
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class ContentCache {
+	static Logger logger = LoggerFactory.getLogger(ContentCache.class);
+
+	public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+	public static final long DEFAULT_MAX_DISK_SIZE = 4096L * 1024 * 1024;
+
+	private long maxSize;
+	private long size;
+	private long maxDiskSize;
+	private long diskSize;
+
+	// In access order, from the least recently used:
+	private Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	// Statistics:
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private static class Entry {
+		private FileInfo info;
+		private Lines lines;
+		private long size;
+		private long diskSize;
+
+		Entry(FileInfo info, Lines lines) {
+			this.info = info;
+			this.lines = lines;
+			this.size = lines.getMemorySize();
+			this.diskSize = lines.getDiskSize();
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param maxSize : max. memory used by the lines in bytes (DEFAULT_MAX_SIZE if not positive)
+	 * @param maxDiskSize : max. size of the temporary files of the lines in bytes (DEFAULT_MAX_DISK_SIZE if not positive)
+	 */
+	public ContentCache(long maxSize, long maxDiskSize) {
+		this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+		this.maxDiskSize = maxDiskSize > 0 ? maxDiskSize : DEFAULT_MAX_DISK_SIZE;
+	}
+
+	/**
+	 * Only the files with metadata that allows to know if they have changed can be cached.
+	 * @param info : the metadata of the file
+	 * @return
+	 */
+	public boolean isCacheable(FileInfo info) {
+		return info != null &&
+			   (info.getEtag() != null || info.getLastModified() != FileInfo.UNKNOWN_DATE) &&
+			   info.getSize() != FileInfo.UNKNOWN_SIZE;
+	}
+
+	/**
+	 * Check if there are lines of a file, without checking if they are up to date (see get()).
+	 * @param key : the identity of the file
+	 * @return
+	 */
+	public synchronized boolean contains(String key) {
+		return entries.containsKey(key);
+	}
+
+	/**
+	 * The lines of a file.
+	 * @param key : the identity of the file
+	 * @param info : the current metadata of the file
+	 * @return a new reference to the lines, that must be closed by the caller (see Lines.retain()),
+	 *         or null if there are no lines or they don't correspond to the metadata (they are removed)
+	 */
+	public synchronized Lines get(String key, FileInfo info) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (!isCacheable(info) || !info.equals(entry.info)) {
+			entries.remove(key);
+			release(entry);
+			logger.debug("Removed the lines of {}: the file has changed", key);
+			return null;
+		}
+		hits++;
+		return entry.lines.retain();
+	}
+
+	/**
+	 * Keep the lines of a file, that have been read because they were not in the cache (counted as a miss).
+	 * The cache takes its own reference to the lines (the caller keeps its reference).
+	 * The lines bigger than the maximum sizes are not kept.
+	 * @param key : the identity of the file
+	 * @param info : the metadata of the file when it was read
+	 * @param lines
+	 */
+	public synchronized void put(String key, FileInfo info, Lines lines) {
+		misses++;
+		Entry entry = new Entry(info, lines);
+		if (!isCacheable(info) || entry.size > maxSize || entry.diskSize > maxDiskSize || lines.retain() == null) {
+			return;
+		}
+		Entry previous = entries.put(key, entry);
+		if (previous != null) {
+			release(previous);
+		}
+		size += entry.size;
+		diskSize += entry.diskSize;
+		evict();
+	}
+
+	/**
+	 * Remove the least recently used lines until the cache is below its maximum sizes.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while ((size > maxSize || diskSize > maxDiskSize) && iterator.hasNext()) {
+			Map.Entry<String, Entry> eldest = iterator.next();
+			iterator.remove();
+			release(eldest.getValue());
+			evictions++;
+			logger.debug("Removed the lines of {}", eldest.getKey());
+		}
+	}
+
+	/**
+	 * Close the reference of the cache to the lines of a removed entry.
+	 */
+	private void release(Entry entry) {
+		size -= entry.size;
+		diskSize -= entry.diskSize;
+		try {
+			entry.lines.close();
+		} catch (IOException e) {
+			logger.warn("Cannot close the lines: {}", e.getMessage());
+		}
+	}
+
+	// Statistics --------------------------------------
+
+	/**
+	 * @return the times that the lines of a file were found up to date
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the times that the lines of a file were read because they were not in the cache
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of lines removed to keep the cache below its maximum size
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the memory used by the lines in the cache, in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the size of the temporary files of the lines in the cache, in bytes
+	 */
+	public synchronized long getDiskSize() {
+		return diskSize;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return entries.size() + " files, " + size / (1024 * 1024) + " of " + maxSize / (1024 * 1024) + " MB, " +
+			   diskSize / (1024 * 1024) + " of " + maxDiskSize / (1024 * 1024) + " MB on disk, " +
+			   hits + " hits, " + misses + " misses, " + evictions + " evictions";
+	}
+}
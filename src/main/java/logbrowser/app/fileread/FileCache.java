@@ -0,0 +1,278 @@
+package logbrowser.app.fileread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local copy of the content of remote log files, kept in a folder between searches.
+ *
+ * Every file is stored as it is in the server (compressed, if it is compressed), with the metadata given by the server
+ * when it was copied (size, date, ETag). The copy is only used while the metadata in the server is the same.
+ * The files are copied while they are read for the first time.
+ * When the folder exceeds its maximum size, the least recently used files are removed.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class FileCache {
+	static Logger logger = LoggerFactory.getLogger(FileCache.class);
+
+	public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+	private static final String DATA = ".data";
+	private static final String INFO = ".properties";
+	private static final String TEMP = ".tmp";
+
+	private File folder;
+	private long maxSize;
+
+	/**
+	 * Constructor
+	 * @param folder : the folder of the cache (created if it doesn't exist)
+	 * @param maxSize : max. size of the folder in bytes (DEFAULT_MAX_SIZE if not positive)
+	 * @throws IOException
+	 */
+	public FileCache(File folder, long maxSize) throws IOException {
+		this.folder = folder;
+		this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+		Files.createDirectories(folder.toPath());
+	}
+
+	/**
+	 * Open the local copy of a file.
+	 * @param key : the identity of the file
+	 * @param info : the current metadata of the file in the server
+	 * @return the content of the local copy, or null if there is no copy or it doesn't correspond to the metadata
+	 * @throws IOException
+	 */
+	public InputStream open(String key, FileInfo info) throws IOException {
+		File data = getLocalFile(key, info);
+		return data == null ? null : new FileInputStream(data);
+	}
+
+	/**
+	 * The local copy of a file, for reading it directly (eg: mapping it in memory).
+	 * @param key : the identity of the file
+	 * @param info : the current metadata of the file in the server
+	 * @return the local copy, or null if there is no copy or it doesn't correspond to the metadata
+	 */
+	public File getLocalFile(String key, FileInfo info) {
+		if (!isValid(key, info)) {
+			return null;
+		}
+		File data = getFile(key);
+		// Mark as recently used:
+		data.setLastModified(System.currentTimeMillis());
+		logger.debug("Reading {} from the cache", key);
+		return data;
+	}
+
+	/**
+	 * Copy a file in the cache while it is read.
+	 * The copy is kept only if the file is read until its end.
+	 * @param key : the identity of the file
+	 * @param info : the metadata of the file in the server
+	 * @param content : the content of the file in the server
+	 * @return the content of the file, to be read and closed by the caller instead of the original content
+	 * @throws IOException
+	 */
+	public InputStream fill(final String key, final FileInfo info, InputStream content) throws IOException {
+		if (!isCacheable(info)) {
+			return content;
+		}
+		final File temp = File.createTempFile(hash(key), TEMP, folder);
+		final OutputStream out = new FileOutputStream(temp);
+
+		return new FilterInputStream(content) {
+			private long count;
+			private boolean eof;
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b == -1) {
+					eof = true;
+				} else {
+					out.write(b);
+					count++;
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n == -1) {
+					eof = true;
+				} else {
+					out.write(b, off, n);
+					count += n;
+				}
+				return n;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				// Skipped bytes must be copied too:
+				byte[] buffer = new byte[(int) Math.min(n, 8192)];
+				int read = read(buffer, 0, buffer.length);
+				return read == -1 ? 0 : read;
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					out.close();
+					// The file has been read until its end (a decompressor may not read the end of the stream):
+					boolean complete = info.getSize() == FileInfo.UNKNOWN_SIZE ? eof : count == info.getSize();
+					if (complete) {
+						commit(key, info, temp);
+					} else {
+						temp.delete();
+					}
+				}
+			}
+		};
+	}
+
+	// Aux. functions --------------------------------------
+
+	/**
+	 * Only the files with metadata that allows to know if they have changed can be cached.
+	 */
+	private boolean isCacheable(FileInfo info) {
+		return info != null &&
+			   (info.getEtag() != null || info.getLastModified() != FileInfo.UNKNOWN_DATE) &&
+			   info.getSize() != 0;
+	}
+
+	private boolean isValid(String key, FileInfo info) {
+		if (!isCacheable(info) || !getFile(key).exists()) {
+			return false;
+		}
+		FileInfo cached = readInfo(key);
+		return cached != null && cached.equals(info);
+	}
+
+	private synchronized void commit(String key, FileInfo info, File temp) {
+		try {
+			// Without metadata, the old copy won't be used while it is replaced:
+			getInfoFile(key).delete();
+			Files.move(temp.toPath(), getFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			Properties properties = new Properties();
+			properties.setProperty("key", key);
+			properties.setProperty("size", String.valueOf(info.getSize()));
+			properties.setProperty("lastModified", String.valueOf(info.getLastModified()));
+			if (info.getEtag() != null) {
+				properties.setProperty("etag", info.getEtag());
+			}
+			try (OutputStream out = new FileOutputStream(getInfoFile(key))) {
+				properties.store(out, null);
+			}
+			logger.debug("Stored {} in the cache", key);
+
+			evict();
+		} catch (IOException e) {
+			logger.warn("Cannot store {} in the cache: {}", key, e.getMessage());
+			temp.delete();
+		}
+	}
+
+	private FileInfo readInfo(String key) {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(getInfoFile(key))) {
+			properties.load(in);
+			return new FileInfo(Long.parseLong(properties.getProperty("size")),
+								Long.parseLong(properties.getProperty("lastModified")),
+								properties.getProperty("etag"));
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Remove the least recently used files until the folder is below its maximum size.
+	 */
+	private void evict() {
+		removeLeastRecentlyUsed(folder, maxSize, (dir, name) -> name.endsWith(DATA), file -> {
+			String name = file.getName();
+			new File(folder, name.substring(0, name.length() - DATA.length()) + INFO).delete();
+			file.delete();
+			logger.debug("Removed {} from the cache", name);
+		});
+	}
+
+	/**
+	 * Remove the least recently used files of a folder (the oldest by date) until their total size is below
+	 * a maximum (also used by IndexStore).
+	 * @param folder
+	 * @param maxSize : max. total size of the files in bytes
+	 * @param filter : the files that are counted and removed
+	 * @param remover : removes a file (and the files that go with it)
+	 */
+	static void removeLeastRecentlyUsed(File folder, long maxSize, FilenameFilter filter, Consumer<File> remover) {
+		File[] files = folder.listFiles(filter);
+		if (files == null) {
+			return;
+		}
+		long total = 0;
+		for (File file : files) {
+			total += file.length();
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < files.length && total > maxSize; i++) {
+			total -= files[i].length();
+			remover.accept(files[i]);
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(folder, hash(key) + DATA);
+	}
+
+	private File getInfoFile(String key) {
+		return new File(folder, hash(key) + INFO);
+	}
+
+	/**
+	 * The name of the files of a key (also used by IndexStore).
+	 */
+	static String hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package logbrowser.app.fileread;
+
+import java.util.Date;
+
+/**
+ * Metadata of a log file, as given by the server (or the local file system).
+ * The values not provided by the server are unknown: -1 for the size, 0 for the date and null for the ETag.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class FileInfo {
+
+	public static final long UNKNOWN_SIZE = -1;
+	public static final long UNKNOWN_DATE = 0;
+
+	private long size;
+	private long lastModified;
+	private String etag;
+
+	public FileInfo(long size, long lastModified, String etag) {
+		this.size = size;
+		this.lastModified = lastModified;
+		this.etag = etag;
+	}
+
+	/**
+	 * The size of the file as it is stored (compressed, if it is compressed).
+	 * @return the size in bytes, or UNKNOWN_SIZE
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the date of the last modification in milliseconds, or UNKNOWN_DATE
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return the HTTP entity tag, or null
+	 */
+	public String getEtag() {
+		return etag;
+	}
+
+	// Object implementation --------------------------------------------------------
+
+	@Override
+	public int hashCode() {
+		return (int) (size ^ lastModified);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj != null &&
+			obj instanceof FileInfo &&
+			((FileInfo) obj).size == size &&
+			((FileInfo) obj).lastModified == lastModified &&
+			(etag == null ? ((FileInfo) obj).etag == null : etag.equals(((FileInfo) obj).etag))) {
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "size: " + (size == UNKNOWN_SIZE ? "?" : size) +
+			   ", modified: " + (lastModified == UNKNOWN_DATE ? "?" : new Date(lastModified)) +
+			   (etag == null ? "" : ", etag: " + etag);
+	}
+}
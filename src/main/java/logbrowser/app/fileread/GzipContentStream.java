@@ -0,0 +1,374 @@
+package logbrowser.app.fileread;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Decompressed content of a gzip file, decompressed in other threads while it is read.
+ *
+ * A reader thread reads the compressed file and puts the decompressed blocks in a queue (only a few blocks ahead
+ * of the block being read), so the decompression and the scan of the lines of the file run at the same time.
+ * Files of independent gzip members with their compressed size (BGZF, eg: compressed with bgzip) are inflated
+ * in parallel, one member per core (see ForkJoinPool), and their blocks are queued in the order of the file.
+ * Other gzip files (including the files of several members) are decompressed by the reader thread, with big buffers,
+ * member after member until the end of the file.
+ *
+ * Closing the stream stops the reader thread, without reading the rest of the file.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+class GzipContentStream extends InputStream {
+
+	public static final int BUFFER_SIZE = 256 * 1024;
+	public static final int BLOCK_SIZE = 1024 * 1024;
+
+	// Gzip header (RFC 1952) and BGZF extra field (BC subfield with the size of the member - 1):
+	private static final int FIXED_HEADER_SIZE = 10;
+	private static final int HEADER_SIZE = 12;
+	private static final int TRAILER_SIZE = 8;
+	private static final int MAX_HEADER_SIZE = HEADER_SIZE + 0xffff;
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	private static final byte[] EOF = new byte[0];
+
+	private static final ExecutorService readers = Executors.newCachedThreadPool(new ThreadFactory() {
+		private AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "gzip-reader-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private InputStream compressed;
+	private BlockingQueue<Future<byte[]>> blocks;
+	private Future<?> reader;
+	private byte[] block = new byte[0];
+	private int position;
+	private boolean eof;
+
+	/**
+	 * Constructor: start decompressing the file.
+	 * @param compressed : the compressed content (it is closed with this stream)
+	 */
+	GzipContentStream(InputStream compressed) {
+		this.compressed = compressed;
+		this.blocks = new ArrayBlockingQueue<>(2 * ForkJoinPool.getCommonPoolParallelism() + 2);
+		this.reader = readers.submit(this::readFile);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextBlock()) {
+			return -1;
+		}
+		return block[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextBlock()) {
+			return -1;
+		}
+		int count = Math.min(len, block.length - position);
+		System.arraycopy(block, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return block.length - position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.cancel(true);
+		for (Future<byte[]> pending : blocks) {
+			pending.cancel(true);
+		}
+		blocks.clear();
+		compressed.close();
+	}
+
+	/**
+	 * Wait for the next block, if the current one has been read.
+	 * @return false at the end of the file
+	 */
+	private boolean nextBlock() throws IOException {
+		while (!eof && position == block.length) {
+			try {
+				block = blocks.take().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Search cancelled");
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+				throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+			}
+			position = 0;
+			eof = block == EOF;
+		}
+		return !eof;
+	}
+
+	// Reader thread --------------------------------------
+
+	private void readFile() {
+		try {
+			BufferedInputStream in = new BufferedInputStream(compressed, BUFFER_SIZE);
+			// Independent members, while the file is BGZF:
+			byte[] member;
+			while ((member = readMember(in)) != null) {
+				byte[] data = member;
+				// With a single core, the members are inflated by this thread:
+				blocks.put(ForkJoinPool.getCommonPoolParallelism() > 1 ?
+						   CompletableFuture.supplyAsync(() -> inflate(data)) : CompletableFuture.completedFuture(inflate(data)));
+			}
+			// The rest of the file:
+			in.reset();
+			if (in.read() != -1) {
+				in.reset();
+				inflateMembers(in);
+			}
+			blocks.put(CompletableFuture.completedFuture(EOF));
+		} catch (InterruptedException e) {
+			// Closed
+		} catch (Exception e) {
+			CompletableFuture<byte[]> error = new CompletableFuture<>();
+			error.completeExceptionally(e);
+			try {
+				blocks.put(error);
+			} catch (InterruptedException closed) {
+				// Closed
+			}
+		}
+	}
+
+	/**
+	 * Inflate the rest of the file, member after member, and queue its blocks.
+	 * The members are read until the end of the file (GZIPInputStream stops after a member when the next one
+	 * is not available yet, eg: while it is being transferred). As in gzip, the data after the last member is ignored
+	 * if it is not a gzip member.
+	 */
+	private void inflateMembers(BufferedInputStream in) throws IOException, InterruptedException {
+		byte[] input = new byte[BUFFER_SIZE];
+		byte[] buffer = new byte[BLOCK_SIZE];
+		int filled = 0;
+		Inflater inflater = new Inflater(true);
+		CRC32 crc = new CRC32();
+		try {
+			for (boolean first = true; readHeader(in, first); first = false) {
+				inflater.reset();
+				crc.reset();
+				long size = 0;
+				int read = 0;
+				while (!inflater.finished()) {
+					if (inflater.needsInput()) {
+						// Marked, so the bytes after the end of the member can be read again:
+						in.mark(input.length);
+						read = in.read(input, 0, input.length);
+						if (read == -1) {
+							throw new EOFException("Unexpected end of gzip file");
+						}
+						inflater.setInput(input, 0, read);
+					}
+					int count = inflater.inflate(buffer, filled, buffer.length - filled);
+					if (count == 0 && inflater.needsDictionary()) {
+						throw new IOException("Corrupt gzip member");
+					}
+					crc.update(buffer, filled, count);
+					size += count;
+					filled += count;
+					if (filled == buffer.length) {
+						blocks.put(CompletableFuture.completedFuture(buffer));
+						buffer = new byte[BLOCK_SIZE];
+						filled = 0;
+					}
+				}
+
+				// The trailer, after the deflated data:
+				in.reset();
+				IOUtils.skipFully(in, read - inflater.getRemaining());
+				byte[] trailer = new byte[TRAILER_SIZE];
+				if (!readFully(in, trailer, 0, TRAILER_SIZE)) {
+					throw new EOFException("Unexpected end of gzip file");
+				}
+				long expectedCrc = uint16(trailer, 0) | (long) uint16(trailer, 2) << 16;
+				long expectedSize = uint16(trailer, 4) | (long) uint16(trailer, 6) << 16;
+				if (crc.getValue() != expectedCrc || (size & 0xffffffffL) != expectedSize) {
+					throw new IOException("Corrupt gzip member");
+				}
+			}
+			if (filled > 0) {
+				blocks.put(CompletableFuture.completedFuture(Arrays.copyOf(buffer, filled)));
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt gzip member", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Read the header of a gzip member, until its deflated data.
+	 * @param first : the first member must be there; after it, the end of the file or other data end the members
+	 * @return false if there are no more members
+	 */
+	private static boolean readHeader(BufferedInputStream in, boolean first) throws IOException {
+		byte[] header = new byte[FIXED_HEADER_SIZE];
+		in.mark(FIXED_HEADER_SIZE);
+		boolean complete = readFully(in, header, 0, FIXED_HEADER_SIZE);
+		if (!complete || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b) {
+			if (first) {
+				throw new IOException("Not in gzip format");
+			}
+			return false;
+		}
+		if (header[2] != 8) {
+			throw new IOException("Unsupported gzip compression method: " + header[2]);
+		}
+		int flags = header[3] & 0xff;
+		if ((flags & FEXTRA) != 0) {
+			byte[] extraLength = new byte[2];
+			if (!readFully(in, extraLength, 0, 2)) {
+				throw new EOFException("Unexpected end of gzip file");
+			}
+			IOUtils.skipFully(in, uint16(extraLength, 0));
+		}
+		if ((flags & FNAME) != 0) {
+			skipString(in);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			skipString(in);
+		}
+		if ((flags & FHCRC) != 0) {
+			IOUtils.skipFully(in, 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Skip a zero-terminated string of a gzip header.
+	 */
+	private static void skipString(InputStream in) throws IOException {
+		int b;
+		while ((b = in.read()) != 0) {
+			if (b == -1) {
+				throw new EOFException("Unexpected end of gzip file");
+			}
+		}
+	}
+
+	/**
+	 * Read the next member of a BGZF file. The stream is marked at the start of the member.
+	 * @return the whole member, or null at the end of the file or if the member is not BGZF
+	 */
+	private static byte[] readMember(BufferedInputStream in) throws IOException {
+		in.mark(MAX_HEADER_SIZE);
+		byte[] header = new byte[HEADER_SIZE];
+		if (!readFully(in, header, 0, HEADER_SIZE) ||
+			(header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8 || header[3] != FEXTRA) {
+			return null;
+		}
+		int extraLength = uint16(header, 10);
+		byte[] extra = new byte[extraLength];
+		if (!readFully(in, extra, 0, extraLength)) {
+			return null;
+		}
+		int size = -1;
+		for (int i = 0; i + 4 <= extraLength; i += 4 + uint16(extra, i + 2)) {
+			if (extra[i] == 'B' && extra[i + 1] == 'C' && uint16(extra, i + 2) == 2 && i + 6 <= extraLength) {
+				size = uint16(extra, i + 4) + 1;
+			}
+		}
+		int headerLength = HEADER_SIZE + extraLength;
+		if (size < headerLength + TRAILER_SIZE) {
+			return null;
+		}
+		byte[] member = new byte[size];
+		System.arraycopy(header, 0, member, 0, HEADER_SIZE);
+		System.arraycopy(extra, 0, member, HEADER_SIZE, extraLength);
+		if (!readFully(in, member, headerLength, size - headerLength)) {
+			throw new EOFException("Unexpected end of gzip file");
+		}
+		return member;
+	}
+
+	/**
+	 * Inflate a BGZF member, checking its CRC.
+	 */
+	private static byte[] inflate(byte[] member) {
+		int headerLength = HEADER_SIZE + uint16(member, 10);
+		int trailer = member.length - TRAILER_SIZE;
+		byte[] data = new byte[uint16(member, trailer + 4) | uint16(member, trailer + 6) << 16];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(member, headerLength, trailer - headerLength);
+			int length = 0;
+			while (length < data.length && !inflater.finished()) {
+				int count = inflater.inflate(data, length, data.length - length);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += count;
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, length);
+			long expected = (uint16(member, trailer) | (long) uint16(member, trailer + 2) << 16);
+			if (length != data.length || crc.getValue() != expected) {
+				throw new UncheckedIOException(new IOException("Corrupt gzip member"));
+			}
+			return data;
+		} catch (DataFormatException e) {
+			throw new UncheckedIOException(new IOException("Corrupt gzip member", e));
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static boolean readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int count = in.read(b, off, len);
+			if (count == -1) {
+				return false;
+			}
+			off += count;
+			len -= count;
+		}
+		return true;
+	}
+
+	private static int uint16(byte[] b, int off) {
+		return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+	}
+}
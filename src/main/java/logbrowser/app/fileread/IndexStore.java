@@ -0,0 +1,205 @@
+package logbrowser.app.fileread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import logbrowser.app.search.TokenIndex;
+import logbrowser.app.search.TokenIndexBuilder;
+import logbrowser.app.search.TrigramFilter;
+
+/**
+ * Indexes and filters of log files that don't change any more (eg: the files of past dates, already rotated),
+ * kept in a folder between searches.
+ *
+ * Every index (see TokenIndex) and filter (see TrigramFilter) is stored compressed, with the metadata of the file
+ * when it was read (size, date, ETag), and it is only used while the metadata of the file is the same.
+ * The indexes are built the first time the files are searched, and the filters the first time the files are read
+ * completely (see AbstractReadFile).
+ * When the folder exceeds its maximum size, the least recently used indexes are removed.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class IndexStore {
+	static Logger logger = LoggerFactory.getLogger(IndexStore.class);
+
+	public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+	private static final String INDEX = ".idx";
+	private static final String FILTER = ".flt";
+	private static final String TEMP = ".tmp";
+	private static final int VERSION = 1;
+
+	// The memory of an index that is being built is limited to a fraction of the size of the folder:
+	private static final int MAX_BUILDER_SIZE_RATIO = 8;
+
+	private File folder;
+	private long maxSize;
+
+	/**
+	 * Constructor
+	 * @param folder : the folder of the indexes (created if it doesn't exist)
+	 * @param maxSize : max. size of the folder in bytes (DEFAULT_MAX_SIZE if not positive)
+	 * @throws IOException
+	 */
+	public IndexStore(File folder, long maxSize) throws IOException {
+		this.folder = folder;
+		this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+		Files.createDirectories(folder.toPath());
+	}
+
+	/**
+	 * Only the files with metadata that allows to know if they have changed can be indexed.
+	 * @param info : the metadata of the file
+	 * @return
+	 */
+	public boolean isIndexable(FileInfo info) {
+		return info != null &&
+			   (info.getEtag() != null || info.getLastModified() != FileInfo.UNKNOWN_DATE) &&
+			   info.getSize() != FileInfo.UNKNOWN_SIZE && info.getSize() != 0;
+	}
+
+	/**
+	 * @return a builder for the index of a file, with a limited memory
+	 */
+	public TokenIndexBuilder newIndexBuilder() {
+		return new TokenIndexBuilder(maxSize / MAX_BUILDER_SIZE_RATIO);
+	}
+
+	/**
+	 * Read the index of a file.
+	 * @param key : the identity of the file
+	 * @param info : the current metadata of the file
+	 * @return the index, or null if there is no index or it doesn't correspond to the metadata
+	 */
+	public TokenIndex open(String key, FileInfo info) {
+		return read(getFile(key, INDEX), key, info, TokenIndex::read);
+	}
+
+	/**
+	 * Store the index of a file.
+	 * @param key : the identity of the file
+	 * @param info : the metadata of the file when it was indexed
+	 * @param index
+	 */
+	public void save(String key, FileInfo info, TokenIndex index) {
+		write(getFile(key, INDEX), key, info, index::write);
+	}
+
+	/**
+	 * Read the filter of a file.
+	 * @param key : the identity of the file
+	 * @param info : the current metadata of the file
+	 * @return the filter, or null if there is no filter or it doesn't correspond to the metadata
+	 */
+	public TrigramFilter openFilter(String key, FileInfo info) {
+		return read(getFile(key, FILTER), key, info, TrigramFilter::read);
+	}
+
+	/**
+	 * Store the filter of a file.
+	 * @param key : the identity of the file
+	 * @param info : the metadata of the file when it was read
+	 * @param filter
+	 */
+	public void saveFilter(String key, FileInfo info, TrigramFilter filter) {
+		write(getFile(key, FILTER), key, info, filter::write);
+	}
+
+	// Aux. functions --------------------------------------
+
+	private interface Reader<T> {
+		T read(DataInputStream in) throws IOException;
+	}
+
+	private interface Writer {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private <T> T read(File file, String key, FileInfo info, Reader<T> reader) {
+		if (!isIndexable(info) || !file.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new InflaterInputStream(new FileInputStream(file), new Inflater(), 64 * 1024)))) {
+			if (in.readInt() != VERSION || !in.readUTF().equals(key)) {
+				return null;
+			}
+			long size = in.readLong();
+			long lastModified = in.readLong();
+			String etag = in.readUTF();
+			if (!info.equals(new FileInfo(size, lastModified, etag.isEmpty() ? null : etag))) {
+				return null;
+			}
+			T data = reader.read(in);
+
+			// Mark as recently used:
+			file.setLastModified(System.currentTimeMillis());
+			logger.debug("Reading {} of {}", file.getName(), key);
+			return data;
+		} catch (IOException e) {
+			logger.warn("Cannot read {} of {}: {}", file.getName(), key, e.getMessage());
+			return null;
+		}
+	}
+
+	private void write(File file, String key, FileInfo info, Writer writer) {
+		if (!isIndexable(info)) {
+			return;
+		}
+		File temp = null;
+		try {
+			temp = File.createTempFile(FileCache.hash(key), TEMP, folder);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new DeflaterOutputStream(new FileOutputStream(temp), new Deflater(Deflater.BEST_SPEED), 64 * 1024)))) {
+				out.writeInt(VERSION);
+				out.writeUTF(key);
+				out.writeLong(info.getSize());
+				out.writeLong(info.getLastModified());
+				out.writeUTF(info.getEtag() == null ? "" : info.getEtag());
+				writer.write(out);
+			}
+			commit(temp, file);
+			logger.debug("Stored {} of {}", file.getName(), key);
+		} catch (IOException e) {
+			logger.warn("Cannot store {} of {}: {}", file.getName(), key, e.getMessage());
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	private synchronized void commit(File temp, File file) throws IOException {
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		evict();
+	}
+
+	/**
+	 * Remove the least recently used indexes and filters until the folder is below its maximum size.
+	 */
+	private void evict() {
+		FileCache.removeLeastRecentlyUsed(folder, maxSize, (dir, name) -> name.endsWith(INDEX) || name.endsWith(FILTER), file -> {
+			file.delete();
+			logger.debug("Removed {}", file.getName());
+		});
+	}
+
+	private File getFile(String key, String extension) {
+		return new File(folder, FileCache.hash(key) + extension);
+	}
+}
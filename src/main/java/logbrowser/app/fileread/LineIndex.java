@@ -0,0 +1,225 @@
+package logbrowser.app.fileread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+import logbrowser.app.LogLine;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.LiteralMatcher;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TimeWindow;
+
+/**
+ * The lines of a local file, read on demand.
+ *
+ * Only the position of every line in the file is kept in memory (8 bytes per line), so big files can be shown
+ * without reading all their content: the lines are read when they are requested (see get()).
+ * The lines are read in blocks, so consecutive lines (eg: the visible rows of a table) are read at once.
+ *
+ * The file must be uncompressed. Remote and compressed files are copied to a temporary file (see ReadFile.index()).
+ * The file is open while there are references to the index: the index has a reference for its creator,
+ * and more references can be taken with retain(); the file is closed (and the temporary file is removed)
+ * when all of them have been closed.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class LineIndex extends AbstractList<LogLine> implements Lines, Closeable {
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	private File file;
+	private boolean temporary;
+	private FileChannel channel;
+	private Charset charset;
+
+	// Start of every line, and end of the last one:
+	private long[] offsets;
+	private int size;
+	private int maxLength;
+
+	// References not closed yet:
+	private int references = 1;
+
+	// Last block read:
+	private long blockStart;
+	private ByteBuffer block;
+
+	/**
+	 * Constructor: find the lines of the file.
+	 * @param file : an uncompressed file
+	 * @param temporary : true if the file must be deleted when the index is closed
+	 * @throws IOException
+	 */
+	public LineIndex(File file, boolean temporary) throws IOException {
+		this.file = file;
+		this.temporary = temporary;
+		this.charset = Charset.defaultCharset();
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			build();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	private void build() throws IOException {
+		long length = channel.size();
+		offsets = new long[1024];
+		offsets[0] = 0;
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(LineScanner.BUFFER_SIZE);
+		long position = 0;
+		while (position < length) {
+			buffer.clear();
+			int count = channel.read(buffer, position);
+			if (count == -1) {
+				break;
+			}
+			for (int i = LiteralMatcher.indexOf(buffer, LineScanner.LF, 0, count); i != -1;
+				 i = LiteralMatcher.indexOf(buffer, LineScanner.LF, i + 1, count)) {
+				addLine(position + i + 1);
+			}
+			position += count;
+		}
+
+		// The last line may not have a line break:
+		if (size == 0 ? length > 0 : offsets[size] < length) {
+			addLine(length);
+		}
+		offsets = Arrays.copyOf(offsets, size + 1);
+	}
+
+	private void addLine(long end) {
+		if (size + 1 == offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[size + 1] = end;
+		maxLength = (int) Math.max(maxLength, end - offsets[size]);
+		size++;
+	}
+
+	/**
+	 * The file is scanned mapping it in memory (see MappedFileScanner).
+	 */
+	@Override
+	public FoundLines search(Query query, TimeWindow window, FoundLines foundLines) throws IOException {
+		if (LineScanner.isSupported()) {
+			return new MappedFileScanner(file).search(query, window, foundLines);
+		}
+		return new ReadFileLocal(file.getPath(), null).search(query, window, foundLines);
+	}
+
+	@Override
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * The positions of the lines, and the last block read.
+	 */
+	@Override
+	public long getMemorySize() {
+		return 8L * offsets.length + BLOCK_SIZE;
+	}
+
+	/**
+	 * The temporary copy of the file.
+	 */
+	@Override
+	public long getDiskSize() {
+		return temporary ? offsets[size] : 0;
+	}
+
+	@Override
+	public synchronized Lines retain() {
+		if (references == 0) {
+			return null;
+		}
+		references++;
+		return this;
+	}
+
+	// List implementation --------------------------------------------------------
+
+	/**
+	 * Read a line of the file.
+	 * @param index : the number of the line (0 based)
+	 * @throws UncheckedIOException if the file cannot be read
+	 */
+	@Override
+	public synchronized LogLine get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Line " + index + " of " + size);
+		}
+		long start = offsets[index];
+		int length = (int) (offsets[index + 1] - start);
+		try {
+			if (block == null || start < blockStart || start + length > blockStart + block.limit()) {
+				int blockLength = Math.max(length, BLOCK_SIZE);
+				if (block != null && start < blockStart) {
+					// Reading backwards: the block ends with the line.
+					read(Math.max(0, start + length - blockLength), blockLength);
+				} else {
+					read(start, blockLength);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		// Without the line break:
+		int from = (int) (start - blockStart);
+		int to = from + length;
+		if (to > from && block.get(to - 1) == LineScanner.LF) {
+			to--;
+		}
+		if (to > from && block.get(to - 1) == LineScanner.CR) {
+			to--;
+		}
+		return new LogLine(index, new String(block.array(), from, to - from, charset));
+	}
+
+	private void read(long start, int length) throws IOException {
+		if (block == null || block.capacity() < length) {
+			block = ByteBuffer.allocate(length);
+		}
+		block.clear();
+		while (block.hasRemaining()) {
+			if (channel.read(block, start + block.position()) == -1) {
+				break;
+			}
+		}
+		block.flip();
+		blockStart = start;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Close a reference to the index: the file is closed with the last one.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (references == 0 || --references > 0) {
+			return;
+		}
+		block = null;
+		channel.close();
+		if (temporary) {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package logbrowser.app.fileread;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import logbrowser.app.LogLine;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.LiteralMatcher;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TimeWindow;
+import logbrowser.app.search.TokenIndexBuilder;
+import logbrowser.app.search.TrigramFilterBuilder;
+
+/**
+ * Search of a text in the lines of a file, working on the bytes of the file.
+ *
+ * The text that every matching line must contain (the prefilter of the Query, see LiteralMatcher) and the line breaks
+ * are found in the bytes, and only the lines that contain the text are decoded into Strings and evaluated by the Query.
+ * When the query has no prefilter, every line is decoded. The content is received in buffers of complete lines (see scan()),
+ * that can come from a stream or from a file mapped in memory.
+ *
+ * The found lines are added to a FoundLines, that applies the limits of the search: the lines that are only counted
+ * are not decoded when the query is a single text, and the scan stops when the results are complete (see isStopped()).
+ * With a time window, only the lines of the window are scanned (found with a binary search in every buffer,
+ * see TimeWindow.seek()), and the scan stops after the window.
+ *
+ * The file must be in the default charset, and the charset must be compatible with ASCII (eg: UTF-8, ISO-8859-1):
+ * see isSupported(). Lines are separated by LF, and a CR before the LF is removed.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+class LineScanner {
+	static Logger logger = LoggerFactory.getLogger(LineScanner.class);
+
+	public static final int BUFFER_SIZE = 1024 * 1024;
+
+	static final byte LF = '\n';
+	static final byte CR = '\r';
+
+	private Query query;
+	private LiteralMatcher prefilter;
+	private Charset charset;
+	private int lineNumber;
+	private FoundLines foundLines;
+	private TokenIndexBuilder indexBuilder;
+	private TrigramFilterBuilder filterBuilder;
+	private TimeWindow window;
+	private boolean windowStarted, windowEnded;
+	private boolean numbered = true;
+
+	LineScanner(Query query, FoundLines foundLines) {
+		this.query = query;
+		this.prefilter = query.getPrefilter();
+		this.charset = Charset.defaultCharset();
+		this.foundLines = foundLines;
+	}
+
+	/**
+	 * Index the scanned lines (see TokenIndex).
+	 * If the builder exceeds its memory (see TokenIndexBuilder.isFull()), it is dropped and the rest of the file
+	 * is scanned without index (getIndexBuilder() returns null).
+	 * @param indexBuilder
+	 */
+	void setIndexBuilder(TokenIndexBuilder indexBuilder) {
+		this.indexBuilder = indexBuilder;
+	}
+
+	TokenIndexBuilder getIndexBuilder() {
+		return indexBuilder;
+	}
+
+	/**
+	 * Build the filter of the scanned lines (see TrigramFilter).
+	 * @param filterBuilder
+	 */
+	void setFilterBuilder(TrigramFilterBuilder filterBuilder) {
+		this.filterBuilder = filterBuilder;
+	}
+
+	TrigramFilterBuilder getFilterBuilder() {
+		return filterBuilder;
+	}
+
+	/**
+	 * Scan only the lines of a time window (the lines must start with the timestamp of the window).
+	 * @param window
+	 */
+	void setTimeWindow(TimeWindow window) {
+		this.window = window;
+	}
+
+	/**
+	 * The lines are scanned from a position of the file (not from its start), so their numbers are unknown.
+	 */
+	void setUnnumbered() {
+		this.numbered = false;
+	}
+
+	/**
+	 * A scanner for a part of the file, that is scanned apart (eg: in parallel, see MappedFileScanner).
+	 * The lines of the part are numbered from 0, and they are added to this scanner with addPart().
+	 * @return the scanner of the part, or null if the file must be scanned in order
+	 *         (the file is indexed, with a time window, in "first lines" mode, or already started)
+	 */
+	LineScanner newPart() {
+		if (indexBuilder != null || filterBuilder != null || window != null || !numbered || lineNumber > 0) {
+			return null;
+		}
+		FoundLines part = foundLines.newPart();
+		return part == null ? null : new LineScanner(query, part);
+	}
+
+	/**
+	 * Add the results of a part scanned apart (see newPart()), after the lines already scanned.
+	 * @param part
+	 */
+	void addPart(LineScanner part) {
+		foundLines.addPart(part.foundLines, lineNumber);
+		lineNumber += part.lineNumber;
+	}
+
+	/**
+	 * Check if the files in the default charset can be scanned as bytes:
+	 * every ASCII character (and the line break) must be encoded as one byte with the same value.
+	 */
+	static boolean isSupported() {
+		Charset charset = Charset.defaultCharset();
+		return charset.equals(StandardCharsets.UTF_8) || charset.newEncoder().maxBytesPerChar() == 1.0f;
+	}
+
+	/**
+	 * Scan the content of a stream, until its end or until the search is stopped.
+	 * @param is
+	 * @throws IOException
+	 */
+	void scan(InputStream is) throws IOException {
+		byte[] array = new byte[BUFFER_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(array);
+		int filled = 0;
+		boolean eof = false;
+
+		while (!eof && !isStopped()) {
+			int count = is.read(array, filled, array.length - filled);
+			if (count == -1) {
+				eof = true;
+			} else {
+				filled += count;
+				if (filled < array.length) {
+					continue;
+				}
+			}
+
+			// Scan the complete lines, and keep the rest for the next time:
+			int limit = eof ? filled : lastIndexOf(buffer, LF, 0, filled) + 1;
+			if (limit == 0 && !eof) {
+				// A line longer than the buffer:
+				array = Arrays.copyOf(array, array.length * 2);
+				buffer = ByteBuffer.wrap(array);
+				continue;
+			}
+			scan(buffer, limit);
+			System.arraycopy(array, limit, array, 0, filled - limit);
+			filled -= limit;
+		}
+	}
+
+	/**
+	 * Scan the lines of a buffer. The buffer must contain complete lines, unless it is the end of the file.
+	 * The lines are numbered after the lines of the previously scanned buffers.
+	 * If the search is stopped (see isStopped()), the rest of the lines are not scanned.
+	 * @param buffer
+	 * @param limit : the end of the lines to scan in the buffer
+	 * @throws InterruptedIOException if the thread is interrupted (eg: the search is cancelled)
+	 */
+	void scan(ByteBuffer buffer, int limit) throws InterruptedIOException {
+		if (indexBuilder != null) {
+			indexBuilder.add(buffer, limit);
+			if (indexBuilder.isFull()) {
+				logger.debug("The index exceeds its maximum size: the file is not indexed");
+				indexBuilder = null;
+			}
+		}
+		if (filterBuilder != null) {
+			filterBuilder.add(buffer, limit);
+		}
+		int position = 0;
+		if (window != null) {
+			// Only the lines of the window:
+			if (!windowStarted) {
+				position = window.seek(buffer, 0, limit, window.getFrom());
+				lineNumber += LiteralMatcher.count(buffer, LF, 0, position);
+				if (position == limit) {
+					return;
+				}
+				windowStarted = true;
+			}
+			int end = window.seek(buffer, position, limit, window.getTo());
+			if (end < limit) {
+				windowEnded = true;
+				limit = end;
+			}
+		}
+		while (position < limit) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedIOException("Search cancelled");
+			}
+			int found = prefilter == null ? position : prefilter.indexOf(buffer, position, limit);
+			if (found == -1) {
+				// No more candidates: just count the lines.
+				lineNumber += LiteralMatcher.count(buffer, LF, position, limit);
+				if (buffer.get(limit - 1) != LF) {
+					// Last line of the file, without line break:
+					lineNumber++;
+				}
+				break;
+			}
+
+			// Lines before the candidate, and limits of the candidate line:
+			int start = lastIndexOf(buffer, LF, position, found) + 1;
+			if (start == 0) {
+				start = position;
+			}
+			lineNumber += LiteralMatcher.count(buffer, LF, position, start);
+			int end = LiteralMatcher.indexOf(buffer, LF, found, limit);
+			if (end == -1) {
+				end = limit;
+			}
+
+			int number = numbered ? lineNumber : LogLine.NO_LINE_NUMBER;
+			if (query.isLiteral() && !foundLines.needsText()) {
+				// Only counted:
+				foundLines.add(number, null);
+			} else {
+				String line = decode(buffer, start, end);
+				if (query.matches(line)) {
+					foundLines.add(number, line);
+				}
+			}
+			lineNumber++;
+			position = end + 1;
+			if (foundLines.isStopped()) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the search has reached its limits (see FoundLines.isStopped()), or the end of the time window
+	 */
+	boolean isStopped() {
+		return windowEnded || foundLines.isStopped();
+	}
+
+	private String decode(ByteBuffer buffer, int start, int end) {
+		return decode(buffer, start, end, charset);
+	}
+
+	/**
+	 * Decode a line, without its line break.
+	 */
+	static String decode(ByteBuffer buffer, int start, int end, Charset charset) {
+		if (end > start && buffer.get(end - 1) == LF) {
+			end--;
+		}
+		if (end > start && buffer.get(end - 1) == CR) {
+			end--;
+		}
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + start, end - start, charset);
+		}
+		byte[] bytes = new byte[end - start];
+		ByteBuffer line = buffer.duplicate();
+		line.position(start);
+		line.get(bytes);
+		return new String(bytes, charset);
+	}
+
+	// Byte functions --------------------------------------
+
+	/**
+	 * Last position of a byte between two positions (the last one is exclusive).
+	 */
+	static int lastIndexOf(ByteBuffer buffer, byte b, int from, int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
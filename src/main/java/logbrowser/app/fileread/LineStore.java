@@ -0,0 +1,165 @@
+package logbrowser.app.fileread;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+import logbrowser.app.LogLine;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TimeWindow;
+
+/**
+ * The lines of a file, kept in memory.
+ *
+ * The content of the file is kept in a single array of bytes, as it is in the file, with the start of every line
+ * (4 bytes per line): the lines are decoded when they are requested (see get()), instead of keeping several objects
+ * for every line (LogLine, String and its chars). The memory used is about the size of the file.
+ *
+ * The file must be in the default charset, compatible with ASCII (see LineScanner). Lines are separated by LF,
+ * and a CR before the LF is removed. The file must be smaller than 2 GB.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class LineStore extends AbstractList<LogLine> implements Lines {
+
+	private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+	private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+	private Charset charset;
+	private byte[] content;
+	private int length;
+
+	// Start of every line, and end of the last one:
+	private int[] offsets;
+	private int size;
+	private int maxLength;
+
+	/**
+	 * Constructor: an empty store, where the content of the file is added (see add()).
+	 * @param capacity : the expected size of the file in bytes (eg: the size of an uncompressed file), or 0 if unknown
+	 */
+	public LineStore(long capacity) {
+		this.charset = Charset.defaultCharset();
+		this.content = new byte[(int) Math.min(MAX_SIZE, capacity > 0 ? capacity : DEFAULT_CAPACITY)];
+		this.offsets = new int[1024];
+	}
+
+	/**
+	 * Read the lines of a file.
+	 * @param is : the content of the file (it is not closed)
+	 * @param capacity : the expected size of the content, or 0 if unknown
+	 * @return the lines
+	 * @throws IOException if the file cannot be read, or it is too big
+	 */
+	public static LineStore read(InputStream is, long capacity) throws IOException {
+		LineStore lines = new LineStore(capacity);
+		byte[] buffer = new byte[LineScanner.BUFFER_SIZE];
+		int count;
+		while ((count = is.read(buffer)) != -1) {
+			lines.add(buffer, 0, count);
+		}
+		lines.end();
+		return lines;
+	}
+
+	/**
+	 * Add the next bytes of the file.
+	 * @param bytes
+	 * @param offset
+	 * @param count
+	 * @throws IOException if the file is too big
+	 */
+	public void add(byte[] bytes, int offset, int count) throws IOException {
+		if (length + count > content.length) {
+			if (count > MAX_SIZE - length) {
+				throw new IOException("The file is too big to be kept in memory");
+			}
+			content = Arrays.copyOf(content, (int) Math.min(MAX_SIZE, Math.max(length + count, 2L * content.length)));
+		}
+		System.arraycopy(bytes, offset, content, length, count);
+		for (int i = length; i < length + count; i++) {
+			if (content[i] == LineScanner.LF) {
+				addLine(i + 1);
+			}
+		}
+		length += count;
+	}
+
+	/**
+	 * The end of the file: the last line may not have a line break. The unused memory is released.
+	 */
+	public void end() {
+		if (offsets[size] < length) {
+			addLine(length);
+		}
+		if (content.length > length) {
+			content = Arrays.copyOf(content, length);
+		}
+		offsets = Arrays.copyOf(offsets, size + 1);
+	}
+
+	private void addLine(int end) {
+		if (size + 1 == offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[size + 1] = end;
+		maxLength = Math.max(maxLength, end - offsets[size]);
+		size++;
+	}
+
+	@Override
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	@Override
+	public long getMemorySize() {
+		return content.length + 4L * offsets.length;
+	}
+
+	/**
+	 * The content is scanned as bytes, like a file (see LineScanner).
+	 */
+	@Override
+	public FoundLines search(Query query, TimeWindow window, FoundLines foundLines) throws IOException {
+		if (length > 0) {
+			LineScanner scanner = new LineScanner(query, foundLines);
+			scanner.setTimeWindow(window);
+			scanner.scan(ByteBuffer.wrap(content), length);
+		}
+		return foundLines;
+	}
+
+	// List implementation --------------------------------------------------------
+
+	/**
+	 * Decode a line.
+	 * @param index : the number of the line (0 based)
+	 */
+	@Override
+	public LogLine get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Line " + index + " of " + size);
+		}
+		int from = offsets[index];
+		int to = offsets[index + 1];
+		// Without the line break:
+		if (to > from && content[to - 1] == LineScanner.LF) {
+			to--;
+		}
+		if (to > from && content[to - 1] == LineScanner.CR) {
+			to--;
+		}
+		return new LogLine(index, new String(content, from, to - from, charset));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
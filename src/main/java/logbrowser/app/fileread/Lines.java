@@ -0,0 +1,66 @@
+package logbrowser.app.fileread;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import logbrowser.app.LogLine;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TimeWindow;
+
+/**
+ * The lines of a file, that are created when they are requested (see get()), from a compact form of the file:
+ * in memory (see LineStore) or in a local file (see LineIndex).
+ *
+ * The lines can be shared by several users (eg: the content cache and the tabs of the window): every user
+ * gets its own reference (see retain()) and closes it when it doesn't need the lines any more. The resources
+ * of the lines (eg: the local file) are released when all the references are closed.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public interface Lines extends List<LogLine>, Closeable {
+
+	/**
+	 * @return the length of the longest line, in bytes
+	 */
+	public int getMaxLength();
+
+	/**
+	 * @return an estimation of the memory used by the lines, in bytes (see ContentCache)
+	 */
+	public long getMemorySize();
+
+	/**
+	 * @return the size of the temporary file used by the lines, in bytes (see ContentCache)
+	 */
+	public default long getDiskSize() {
+		return 0;
+	}
+
+	/**
+	 * Get a new reference to the lines, that must be closed by its user.
+	 * @return these lines, or null if they have already been released
+	 */
+	public default Lines retain() {
+		return this;
+	}
+
+	/**
+	 * Close a reference to the lines (the lines in memory don't need to be closed).
+	 */
+	@Override
+	public default void close() throws IOException {
+	}
+
+	/**
+	 * Search in the lines.
+	 * @param query : the compiled search
+	 * @param window : only the lines of this time window are searched (null for all the lines)
+	 * @param foundLines : the results, with the limits of the search
+	 * @return foundLines
+	 * @throws IOException
+	 */
+	public FoundLines search(Query query, TimeWindow window, FoundLines foundLines) throws IOException;
+}
@@ -0,0 +1,173 @@
+package logbrowser.app.fileread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.LiteralMatcher;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TimeWindow;
+
+/**
+ * Search in an uncompressed local file, mapping it in memory (FileChannel.map).
+ *
+ * The bytes of the mapped file are scanned directly by a LineScanner, without copying or decoding them.
+ * Files bigger than WINDOW_SIZE are mapped in consecutive windows, so files of more than 2 GB can be read.
+ * When only the lines of a time window are searched, only the pages of the file read by the binary search
+ * and by the scan of the window are searched (the lines before the window are only counted).
+ *
+ * Files bigger than PARALLEL_MIN_SIZE are split in parts of about PART_SIZE bytes, that start at a line break,
+ * and the parts are scanned in parallel in the common ForkJoinPool (one core per part). The results of the parts
+ * are added in the order of the file, numbering their lines after the lines of the previous parts.
+ * The files are scanned in order while they are indexed, with a time window or in "first lines" mode
+ * (see LineScanner.newPart()).
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+class MappedFileScanner {
+
+	public static final int WINDOW_SIZE = 256 * 1024 * 1024;
+	public static final int PART_SIZE = 32 * 1024 * 1024;
+	public static final long PARALLEL_MIN_SIZE = 2L * PART_SIZE;
+
+	private File file;
+
+	MappedFileScanner(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Search in the file.
+	 * @param query : the compiled search
+	 * @param window : only the lines of this time window are searched (null for all the lines)
+	 * @param foundLines : the results, with the limits of the search
+	 * @return the results
+	 * @throws IOException
+	 */
+	FoundLines search(Query query, TimeWindow window, FoundLines foundLines) throws IOException {
+		LineScanner scanner = new LineScanner(query, foundLines);
+		scanner.setTimeWindow(window);
+		scan(scanner);
+		return foundLines;
+	}
+
+	/**
+	 * Scan the file, until its end or until the search is stopped.
+	 * @param scanner
+	 * @throws IOException
+	 */
+	void scan(LineScanner scanner) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size >= PARALLEL_MIN_SIZE && ForkJoinPool.getCommonPoolParallelism() > 1 && scanner.newPart() != null) {
+				scanParallel(channel, size, scanner);
+			} else {
+				scan(channel, 0, size, scanner);
+			}
+		}
+	}
+
+	/**
+	 * Scan the parts of the file in parallel, and add their results to the scanner in the order of the file.
+	 * Only a few parts are scanned ahead of the part being added, so the memory used by their results is limited.
+	 * If the thread is interrupted (eg: the search is cancelled), the parts that have not started are cancelled.
+	 */
+	private void scanParallel(FileChannel channel, long size, LineScanner scanner) throws IOException {
+		int maxPending = 2 * ForkJoinPool.getCommonPoolParallelism();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		Deque<ForkJoinTask<LineScanner>> pending = new ArrayDeque<>();
+		long start = 0;
+		try {
+			while (start < size || !pending.isEmpty()) {
+				while (start < size && pending.size() < maxPending) {
+					long end = start + PART_SIZE < size ? nextLine(channel, start + PART_SIZE, size) : size;
+					long partStart = start;
+					LineScanner part = scanner.newPart();
+					pending.add(ForkJoinPool.commonPool().submit(() -> {
+						if (!cancelled.get()) {
+							scan(channel, partStart, end, part);
+						}
+						return part;
+					}));
+					start = end;
+				}
+				scanner.addPart(pending.removeFirst().get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Search cancelled");
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			// The channel is closed after this: wait for the parts that have started.
+			cancelled.set(true);
+			for (ForkJoinTask<LineScanner> task : pending) {
+				task.quietlyJoin();
+			}
+		}
+	}
+
+	/**
+	 * Scan the bytes of the file between two positions (the whole file, or a part that ends at a line break),
+	 * mapping them in consecutive windows, until the end or until the search is stopped.
+	 * @throws IOException if a line doesn't fit in a window (more than 2 GB)
+	 */
+	private static void scan(FileChannel channel, long start, long end, LineScanner scanner) throws IOException {
+		long position = start;
+		int windowSize = WINDOW_SIZE;
+		while (position < end && !scanner.isStopped()) {
+			long length = Math.min(windowSize, end - position);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+			// Only the complete lines of the window are scanned (unless it is the end):
+			int limit = (int) length;
+			if (position + length < end) {
+				limit = LineScanner.lastIndexOf(window, LineScanner.LF, 0, limit) + 1;
+				if (limit == 0) {
+					// A line longer than the window: try again with a bigger window (a buffer can't be bigger than 2 GB).
+					if (windowSize == Integer.MAX_VALUE) {
+						throw new IOException("The line at position " + position + " is longer than " + windowSize + " bytes");
+					}
+					windowSize = (int) Math.min(Integer.MAX_VALUE, 2L * windowSize);
+					continue;
+				}
+			}
+
+			scanner.scan(window, limit);
+			position += limit;
+			windowSize = WINDOW_SIZE;
+		}
+	}
+
+	/**
+	 * @return the start of the line after a position (or the end of the file)
+	 */
+	private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+		while (position < size) {
+			block.clear();
+			int length = channel.read(block, position);
+			if (length <= 0) {
+				break;
+			}
+			int lf = LiteralMatcher.indexOf(block, LineScanner.LF, 0, length);
+			if (lf != -1) {
+				return position + lf + 1;
+			}
+			position += length;
+		}
+		return size;
+	}
+}
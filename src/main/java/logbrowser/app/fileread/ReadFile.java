@@ -2,9 +2,12 @@
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
 
-import logbrowser.app.LogLine;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TimeWindow;
+import logbrowser.config.LogConfig;
 
 /**
  * Interface with the different treatments (read, search, copy..) for the different types of log files.
@@ -23,11 +26,36 @@ public interface ReadFile {
 	public boolean exists() throws IOException;
 	
 	/**
-	 * Read this log file
-	 * @return a list of the lines (LogLine) of the file (LogFile).
+	 * Return the metadata of this log file (size, date of modification...).
+	 * @return the metadata, or null if the file doesn't exist
 	 * @throws IOException
 	 */
-	public List<LogLine> read() throws IOException;
+	public FileInfo getInfo() throws IOException;
+	
+	/**
+	 * Read this log file, keeping its lines in memory (see LineStore).
+	 * @return the lines (LogLine) of the file (LogFile), that must be closed when they are no longer used
+	 * @throws IOException
+	 */
+	public Lines read() throws IOException;
+	
+	/**
+	 * Index the lines of this log file, to read them on demand (see LineIndex).
+	 * @return the lines of the file, that must be closed when they are no longer used (see Lines.retain())
+	 * @throws IOException
+	 */
+	public Lines index() throws IOException;
+	
+	/**
+	 * Search in this log file, without loading the whole file.
+	 * The reading stops when the results are complete (see FoundLines.isStopped()).
+	 * @param query : the compiled search
+	 * @param window : only the lines of this time window are searched (null for all the lines)
+	 * @param foundLines : where the lines that match the query are added (with the limits of the search)
+	 * @return foundLines
+	 * @throws IOException
+	 */
+	public FoundLines search(Query query, TimeWindow window, FoundLines foundLines) throws IOException;
 	
 	/**
 	 * Copy this log file to a file destination.
@@ -36,6 +64,27 @@ public interface ReadFile {
 	 */
 	public void copy(File destination) throws IOException;
 	
+	/**
+	 * Copy this log file to a file destination as it is stored, without decompressing it.
+	 * @param destination
+	 * @throws IOException
+	 */
+	public void copyCompressed(File destination) throws IOException;
+	
+	/**
+	 * Open the content of this log file, to copy it to another destination (eg: an archive).
+	 * @param compressed : if the content is read as it is stored, without decompressing it
+	 * @return an InputStream that must be closed by the caller
+	 * @throws IOException
+	 */
+	public InputStream open(boolean compressed) throws IOException;
+	
+	/**
+	 * Return the compression of this log file.
+	 * @return the compression, or null if the file is not compressed
+	 */
+	public LogConfig.Compression getCompression();
+	
 	/**
 	 * Return the path of this log file as a String. 
 	 * @return
@@ -1,103 +1,267 @@
 package logbrowser.app.fileread;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.Authenticator;
-import java.net.PasswordAuthentication;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
-import org.apache.commons.io.FileUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 
-import logbrowser.app.LogLine;
 import logbrowser.config.LogConfig;
 
 /**
  * ReadFile implementation for HTTP files.
+ *
+ * Every request carries the credentials of its configuration (Basic authentication), so the configurations of
+ * different servers don't share them. The responses are read until their end and closed, so the connections are
+ * kept alive and reused by the next requests to the same server (the keep-alive cache of HttpURLConnection,
+ * see the system property http.maxConnections). The uncompressed files are requested with gzip content encoding,
+ * so the servers that compress their responses transfer much less.
  * 
  * @author rodriag
  * @since 1.0
  */
-public class ReadFileHttp implements ReadFile {
+public class ReadFileHttp extends AbstractReadFile {
 	
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	private URL url;
-	private LogConfig.Compression compression;
+	private String user;
+	private String pwd;
+	private FileInfo info;
 
-	public ReadFileHttp(URL url, LogConfig.Compression compression, final String user, final String pwd) {
+	public ReadFileHttp(URL url, LogConfig.Compression compression, String user, String pwd) {
+		super(compression);
 		this.url = url;
-		this.compression = compression;
+		this.user = user;
+		this.pwd = pwd;
+	}
 
-		// Set the authenticator that will be used by the networking code
-	    Authenticator.setDefault(new Authenticator() {
-	        protected PasswordAuthentication getPasswordAuthentication() {
-	            // Return the information (a data holder that is used by Authenticator)
-	            return new PasswordAuthentication(user, pwd.toCharArray());
-	        }
-	    });
+	/**
+	 * Open a connection, with Basic authentication if there is a user.
+	 * @param url
+	 * @param user : can be null
+	 * @param pwd : can be null
+	 * @return the connection, not connected yet
+	 * @throws IOException
+	 */
+	static HttpURLConnection openConnection(URL url, String user, String pwd) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		if (user != null) {
+			String credentials = user + ":" + (pwd == null ? "" : pwd);
+			connection.setRequestProperty("Authorization",
+					"Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+		}
+		return connection;
+	}
+
+	private HttpURLConnection openConnection() throws IOException {
+		return openConnection(url, user, pwd);
 	}
 	
+	/**
+	 * List the names of the files in a remote directory, parsing the directory index generated by the server.
+	 * Only the pages that are recognized as a directory index (eg: "Index of /logs") are parsed.
+	 * @param dirUrl : the URL of the directory
+	 * @param user : can be null
+	 * @param pwd : can be null
+	 * @return the names of the files
+	 * @throws IOException if the directory cannot be listed
+	 */
+	public static Set<String> list(URL dirUrl, String user, String pwd) throws IOException {
+		HttpURLConnection connection = openConnection(dirUrl, user, pwd);
+		try {
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				throw new IOException("HTTP " + connection.getResponseCode() + " listing " + dirUrl);
+			}
+			Document document;
+			try (InputStream is = connection.getInputStream()) {
+				document = Jsoup.parse(is, null, dirUrl.toString());
+			}
+			String title = document.title();
+			if (!title.startsWith("Index of") && !title.startsWith("Directory listing for")) {
+				throw new IOException("Not a directory index: " + dirUrl);
+			}
+
+			// The files are the links to the directory:
+			String dirPath = dirUrl.getPath();
+			Set<String> names = new HashSet<>();
+			for (Element link : document.select("a[href]")) {
+				String href = link.absUrl("href");
+				if (href.isEmpty()) {
+					continue;
+				}
+				String path = new URL(href).getPath();
+				if (path.startsWith(dirPath) && path.length() > dirPath.length()) {
+					String name = path.substring(dirPath.length());
+					if (!name.contains("/")) {
+						names.add(URLDecoder.decode(name, "UTF-8"));
+					}
+				}
+			}
+			return names;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
 	// ReadFile implementation ------------------------------------------------------
 	
+	/**
+	 * The file is checked with a HEAD request, so the content is not transferred.
+	 */
 	@Override
 	public boolean exists() throws IOException {
-		InputStream is = null;
-		try {
-			is = url.openStream();
-			return true;
-		} catch (FileNotFoundException e) {
-			return false;
-		} finally {
-			if (is != null) is.close();
-		}
+		info = head();
+		return info != null;
 	}
 
 	@Override
-	public List<LogLine> read() throws IOException {
-		List<LogLine> logLines = new ArrayList<>();
+	public FileInfo getInfo() throws IOException {
+		if (info == null) {
+			info = head();
+		}
+		return info;
+	}
 
-		InputStream is = url.openStream();
-		InputStreamReader isr;
+	/**
+	 * Ask the server for the metadata of the file, with a HEAD request; 
+	 * if the server doesn't accept HEAD, with a GET of the first byte of the file.
+	 * @return the metadata, or null if the file doesn't exist
+	 * @throws IOException
+	 */
+	private FileInfo head() throws IOException {
+		HttpURLConnection connection = openConnection();
+		connection.setRequestMethod("HEAD");
+		int code = connection.getResponseCode();
 
-		if (compression == null) {
-			isr = new InputStreamReader(is);
-		} else {
-			InputStream gzis = new GZIPInputStream(is);
-			isr = new InputStreamReader(gzis);
+		boolean ranged = false;
+		if (code == HttpURLConnection.HTTP_BAD_METHOD || code == HttpURLConnection.HTTP_NOT_IMPLEMENTED) {
+			connection.disconnect();
+			connection = openConnection();
+			connection.setRequestProperty("Range", "bytes=0-0");
+			code = connection.getResponseCode();
+			ranged = true;
 		}
-		BufferedReader reader = new BufferedReader(isr);
+
 		try {
-	        String line;
-	        for (int i = 0; (line = reader.readLine()) != null; i++) {
-	        	logLines.add(new LogLine(i, line));
+			if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+				return null;
+			} else if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+				throw new IOException("Server returned HTTP response code: " + code + " for URL: " + url);
 			}
+
+			long size = connection.getContentLengthLong();
+			if (code == HttpURLConnection.HTTP_PARTIAL) {
+				// Content-Range: bytes 0-0/<size>
+				String range = connection.getHeaderField("Content-Range");
+				size = FileInfo.UNKNOWN_SIZE;
+				if (range != null && range.contains("/") && !range.endsWith("*")) {
+					size = Long.parseLong(range.substring(range.lastIndexOf('/') + 1).trim());
+				}
+			}
+			return new FileInfo(size, connection.getLastModified(), connection.getHeaderField("ETag"));
+
 		} finally {
-			reader.close();
+			if (ranged && code == HttpURLConnection.HTTP_PARTIAL) {
+				// Read the byte, so the connection can be reused:
+				try (InputStream is = connection.getInputStream()) {
+					while (is.read() != -1);
+				}
+			} else if (ranged) {
+				// The server has ignored the range: don't transfer the file.
+				connection.disconnect();
+			}
 		}
-		return logLines;
 	}
-	
-	@Override
-	public void copy(File destFile) throws IOException {
-		InputStream input;
 
+	/**
+	 * The uncompressed files are requested with gzip content encoding (the ranges of the other requests
+	 * are positions in the file, so they are not encoded).
+	 */
+	@Override
+	protected InputStream openStream() throws IOException {
+		HttpURLConnection connection = openConnection();
 		if (compression == null) {
-			input = url.openStream();
-		} else {
-			input = new GZIPInputStream(url.openStream());
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+		}
+		InputStream is = connection.getInputStream();
+		// Only the encoding that has been requested is decoded (a compressed file served as gzip keeps its bytes):
+		if (compression != null || !"gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+			return is;
 		}
 		try {
-			FileUtils.copyInputStreamToFile(input, destFile);
-		} finally {
-			input.close();
+			return new GZIPInputStream(is, BUFFER_SIZE);
+		} catch (IOException e) {
+			is.close();
+			throw e;
 		}
 	}
+
+	/**
+	 * The file can be requested from a position (if the server accepts ranges, see openStream(long)).
+	 */
+	@Override
+	protected boolean canReadFrom() {
+		return true;
+	}
+
+	/**
+	 * The content is requested from a position with a Range request.
+	 */
+	@Override
+	protected InputStream openStream(long position) throws IOException {
+		HttpURLConnection connection = openConnection();
+		connection.setRequestProperty("Range", "bytes=" + position + "-");
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+			connection.disconnect();
+			throw new IOException("The server doesn't accept ranges for URL: " + url);
+		}
+		return connection.getInputStream();
+	}
+
+	/**
+	 * The block is requested with a Range request.
+	 * If the server doesn't accept ranges, the connection is closed without transferring the file.
+	 */
+	@Override
+	protected int readBlock(long position, ByteBuffer block) throws IOException {
+		HttpURLConnection connection = openConnection();
+		connection.setRequestProperty("Range", "bytes=" + position + "-" + (position + block.remaining() - 1));
+		int code = connection.getResponseCode();
+		if (code == HttpURLConnection.HTTP_OK) {
+			connection.disconnect();
+			return -1;
+		} else if (code != HttpURLConnection.HTTP_PARTIAL) {
+			connection.disconnect();
+			throw new IOException("Server returned HTTP response code: " + code + " for URL: " + url);
+		}
+		int count = 0;
+		try (InputStream is = connection.getInputStream()) {
+			int read;
+			while (block.hasRemaining() &&
+				   (read = is.read(block.array(), block.arrayOffset() + block.position(), block.remaining())) != -1) {
+				block.position(block.position() + read);
+				count += read;
+			}
+		}
+		return count;
+	}
 	
+	@Override
+	protected String getKey() {
+		return url.toString();
+	}
+
 	@Override
 	public String getPath() {
 		return url.getPath();
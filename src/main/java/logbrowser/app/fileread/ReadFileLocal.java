@@ -1,18 +1,26 @@
 package logbrowser.app.fileread;
 
-import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.zip.GZIPInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
 
-import org.apache.commons.io.FileUtils;
-
-import logbrowser.app.LogLine;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TokenIndex;
 import logbrowser.config.LogConfig;
 
 /**
@@ -21,14 +29,31 @@
  * @author rodriag
  * @since 1.0
  */
-public class ReadFileLocal implements ReadFile {
+public class ReadFileLocal extends AbstractReadFile {
 
 	private File file;
-	private LogConfig.Compression compression;
 
 	public ReadFileLocal(String path, LogConfig.Compression compression) throws IOException {
+		super(compression);
 		this.file = new File(path);
-		this.compression = compression;
+	}
+	
+	/**
+	 * List the names of the files in a local directory.
+	 * @param dir
+	 * @return the names of the files (empty if the directory doesn't exist)
+	 * @throws IOException
+	 */
+	public static Set<String> list(String dir) throws IOException {
+		Set<String> names = new HashSet<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(dir))) {
+			for (Path path : stream) {
+				names.add(path.getFileName().toString());
+			}
+		} catch (NoSuchFileException e) {
+			// No directory, no files.
+		}
+		return names;
 	}
 	
 	// ReadFile implementation --------------------------------------------------------------
@@ -39,46 +64,86 @@ public boolean exists() throws IOException {
 	}
 	
 	@Override
-	public List<LogLine> read() throws IOException {
-		List<LogLine> logLines = new ArrayList<>();
-
-		InputStream is = new FileInputStream(file);
-		InputStreamReader isr;
-		
+	public FileInfo getInfo() throws IOException {
+		return file.exists() ? new FileInfo(file.length(), file.lastModified(), null) : null;
+	}
+	
+	/**
+	 * Uncompressed files are scanned mapping them in memory (see MappedFileScanner).
+	 */
+	@Override
+	protected void scan(LineScanner scanner) throws IOException {
 		if (compression == null) {
-			isr = new InputStreamReader(is);
+			new MappedFileScanner(file).scan(scanner);
 		} else {
-			InputStream gzis = new GZIPInputStream(is);
-			isr = new InputStreamReader(gzis);
+			super.scan(scanner);
+		}
+	}
+
+	/**
+	 * The lines of uncompressed files are read directly from their position.
+	 */
+	@Override
+	protected void readLines(TokenIndex index, BitSet lines, Query query, FoundLines foundLines) throws IOException {
+		if (compression != null) {
+			super.readLines(index, lines, query, foundLines);
+			return;
 		}
-		BufferedReader reader = new BufferedReader(isr);
-		String line;
-		try {
-			for (int i = 0;(line = reader.readLine()) != null; i++) {
-				logLines.add(new LogLine(i, line));
+		Charset charset = Charset.defaultCharset();
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for (int line = lines.nextSetBit(0); line != -1 && !foundLines.isStopped(); line = lines.nextSetBit(line + 1)) {
+				long start = index.getStart(line);
+				int length = (int) (index.getEnd(line) - start);
+				if (length > buffer.capacity()) {
+					buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+				}
+				buffer.clear();
+				buffer.limit(length);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, start + buffer.position()) == -1) {
+						throw new EOFException("The file " + file + " has changed since it was indexed");
+					}
+				}
+
+				String text = LineScanner.decode(buffer, 0, length, charset);
+				if (query.matches(text)) {
+					foundLines.add(line, text);
+				}
 			}
-        } finally {
-        	reader.close();
-        }
-		return logLines;
+		}
+	}
+
+	/**
+	 * Local files are identified by their absolute path.
+	 */
+	@Override
+	protected String getIndexKey() {
+		return file.getAbsolutePath();
 	}
 	
+	/**
+	 * Uncompressed files are indexed directly, without copying them.
+	 */
 	@Override
-	public void copy(File destFile) throws IOException {
-		InputStream input;
-		
+	protected LineIndex buildIndex() throws IOException {
 		if (compression == null) {
-			input = new FileInputStream(file);
-		} else {
-			InputStream is = new FileInputStream(file);
-			input = new GZIPInputStream(is);
+			return new LineIndex(file, false);
 		}
+		return super.buildIndex();
+	}
+	
+	@Override
+	protected InputStream openStream() throws IOException {
+		return new FileInputStream(file);
+	}
 
-		try {
-			FileUtils.copyInputStreamToFile(input, destFile);
-		} finally {
-			input.close();
-		}
+	/**
+	 * The file is copied directly (see AbstractReadFile.copy()).
+	 */
+	@Override
+	protected File getLocalCopy() {
+		return file;
 	}
 	
 	@Override
@@ -1,134 +1,323 @@
 	package logbrowser.app.fileread;
 
-import java.io.BufferedReader;
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Properties;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
 
-import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelSftp;
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 
-import logbrowser.app.LogLine;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.LiteralMatcher;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.TimeWindow;
+import logbrowser.config.LogConfig;
 
 /**
  * ReadFile implementation for SSH files.
+ * The connections are taken from the SshSessionPool, shared by all the SSH files.
+ * With remote grep, the searches run in the host (see search()), and only the found lines are transferred.
  * 
  * @author rodriag
  * @since 1.0
  */
-public class ReadFileSsh implements ReadFile {
+public class ReadFileSsh extends AbstractReadFile {
 	
-	public static final int PORT = 22;
+	public static final int PORT = SshSessionPool.PORT;
 
 	private String host;
 	private String user;
 	private String pwd;
 	private String path;
 	
-	private JSch jsch;
-	private Properties config;
-	private Session session;
-	private ChannelSftp sftpChannel;
+	private SshSessionPool pool;
+	private FileInfo info;
+	private boolean remoteGrep;
 
-	public ReadFileSsh(String host, String user, String pwd, String path) throws JSchException {
+	public ReadFileSsh(String host, String user, String pwd, String path, LogConfig.Compression compression) throws JSchException {
+		super(compression);
 		this.host = host;
 		this.path = path;
 		this.user = user;
 		this.pwd = pwd;
 		
-		jsch = new JSch();
-
-		config = new java.util.Properties(); 
-		config.put("StrictHostKeyChecking", "no");
+		pool = SshSessionPool.getInstance();
 	}
-	
-	private void connect() throws JSchException {
-		session = jsch.getSession(user, host, PORT);
-		session.setPassword(pwd);
-		session.setConfig(config);
-		session.connect();
-		
-		Channel channel = session.openChannel("sftp");
-		channel.connect();
-		sftpChannel = (ChannelSftp) channel;
+
+	/**
+	 * Search with grep in the host, instead of transferring the file.
+	 * The host must have a POSIX shell and grep, and the decompressor of the compressed files (eg: gzip).
+	 * @param remoteGrep
+	 */
+	public void setRemoteGrep(boolean remoteGrep) {
+		this.remoteGrep = remoteGrep;
 	}
-	
-	private void disconnect() throws JSchException {
-		sftpChannel.disconnect();
-		session.disconnect();
+
+	/**
+	 * List the names of the files in a remote directory.
+	 * @param host
+	 * @param user
+	 * @param pwd
+	 * @param dir
+	 * @return the names of the files (empty if the directory doesn't exist)
+	 * @throws IOException
+	 */
+	public static Set<String> list(String host, String user, String pwd, String dir) throws IOException {
+		SshSessionPool pool = SshSessionPool.getInstance();
+		ChannelSftp sftpChannel = pool.acquire(host, user, pwd);
+		boolean reusable = false;
+		try {
+			Set<String> names = new HashSet<>();
+			for (Object entry : (Vector<?>) sftpChannel.ls(dir)) {
+				names.add(((ChannelSftp.LsEntry) entry).getFilename());
+			}
+			reusable = true;
+			return names;
+
+		} catch(SftpException e) {
+			reusable = true;
+			if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+				return new HashSet<>();
+			}
+			throw new IOException(e.getMessage());
+		} finally {
+			pool.release(sftpChannel, host, user, reusable);
+		}
 	}
 
 	// ReadFile implementation --------------------------------------------------------
 
 	@Override
 	public boolean exists() throws IOException {
+		info = stat();
+		return info != null;
+	}
+	
+	@Override
+	public FileInfo getInfo() throws IOException {
+		if (info == null) {
+			info = stat();
+		}
+		return info;
+	}
+
+	private FileInfo stat() throws IOException {
+		ChannelSftp sftpChannel = pool.acquire(host, user, pwd);
+		boolean reusable = false;
 		try {
-			connect();
-			InputStream is = null;
-			try {
-				is = sftpChannel.get(path);
-				return true;
-
-			} catch(SftpException e) {
-				return false;
-			} finally {
-				if (is != null) {
-					is.close();
-				}
-				disconnect();
-			}
-		} catch(JSchException e) {
-			throw new IOException(e.getMessage());
+			SftpATTRS attrs = sftpChannel.stat(path);
+			reusable = true;
+			return new FileInfo(attrs.getSize(), attrs.getMTime() * 1000L, null);
+
+		} catch(SftpException e) {
+			reusable = true;
+			return null;
+		} finally {
+			pool.release(sftpChannel, host, user, reusable);
 		}
 	}
 
+	/**
+	 * With remote grep, the lines that contain the prefilter of the query are found with grep in the host,
+	 * and only those lines are transferred and evaluated by the query. The file is read as usual when the query
+	 * has no prefilter, with a time window (the lines without timestamp need the previous lines), or when
+	 * the file has an up to date copy in the cache (or its lines are in the content cache).
+	 */
 	@Override
-	public List<LogLine> read() throws IOException {
-		List<LogLine> logLines = new ArrayList<>();
+	public FoundLines search(Query query, TimeWindow window, FoundLines foundLines) throws IOException {
+		LiteralMatcher prefilter = query.getPrefilter();
+		if (!remoteGrep || prefilter == null || window != null ||
+			(contentCache != null && contentCache.contains(getIndexKey())) ||
+			(cache != null && cache.getLocalFile(getKey(), getInfo()) != null)) {
+			return super.search(query, window, foundLines);
+		}
+
+		Charset charset = Charset.defaultCharset();
+		ChannelExec channel = pool.exec(host, user, pwd, grepCommand(prefilter).getBytes(charset));
 		try {
-			connect();
-			String line;
-			try (InputStream is = sftpChannel.get(path)) {
-				if (is != null) {
-					BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-					for (int i = 0; (line = reader.readLine()) != null; i++) {
-						logLines.add(new LogLine(i, line));
-					}
+			ByteArrayOutputStream errors = new ByteArrayOutputStream();
+			channel.setErrStream(errors);
+			InputStream is = channel.getInputStream();
+			channel.connect();
+
+			readGrepOutput(is, charset, query, foundLines);
+			if (foundLines.isStopped()) {
+				return foundLines;
+			}
+
+			// Exit status of grep: 0 (found), 1 (not found), 2 (error)
+			while (!channel.isClosed()) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Search cancelled");
 				}
-				return logLines;
+			}
+			int status = channel.getExitStatus();
+			if (status > 1 || (status == 1 && errors.size() > 0)) {
+				throw new IOException("Remote grep failed in " + host + ": " + errors.toString(charset.name()).trim());
+			}
+			return foundLines;
+		} catch (JSchException e) {
+			throw new IOException("Remote grep failed in " + host + ": " + e.getMessage());
+		} finally {
+			pool.release(channel, host, user, false);
+		}
+	}
 
-			} finally {
-				disconnect();
+	/**
+	 * Add the lines of the output of grep that match the query.
+	 * Every line is "number:text" (the numbers start with 1), separated by LF as in LineScanner.
+	 * @param is : the output of grep
+	 * @param charset
+	 * @param query
+	 * @param foundLines
+	 * @throws IOException if the output is not the output of grep -n
+	 */
+	void readGrepOutput(InputStream is, Charset charset, Query query, FoundLines foundLines) throws IOException {
+		InputStream output = new BufferedInputStream(is);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		String line;
+		while (!foundLines.isStopped() && (line = readLine(output, bytes, charset)) != null) {
+			int separator = line.indexOf(':');
+			int number;
+			try {
+				number = separator > 0 ? Integer.parseInt(line.substring(0, separator)) : 0;
+			} catch (NumberFormatException e) {
+				number = 0;
+			}
+			if (number <= 0) {
+				throw new IOException("Unexpected output of remote grep in " + host + ": " + line);
+			}
+			String text = line.substring(separator + 1);
+			if (query.matches(text)) {
+				foundLines.add(number - 1, text);
 			}
-		} catch(JSchException | SftpException e) {
-			throw new IOException(e.getMessage());
 		}
 	}
-	
+
+	/**
+	 * The command that finds the lines of the file that contain a text (decompressing the file if needed).
+	 * The bytes are compared as they are (LC_ALL=C), so the case is ignored only for ASCII letters, as in LiteralMatcher,
+	 * and the file is always processed as text (-a), so grep doesn't answer "Binary file matches" instead of the lines.
+	 */
+	String grepCommand(LiteralMatcher prefilter) {
+		String grep = "LC_ALL=C grep -a -n -F" + (prefilter.isIgnoreCase() ? " -i" : "") + " -e " + quote(prefilter.getText());
+		if (compression == null) {
+			return grep + " " + quote(path);
+		}
+		String decompressor;
+		switch (compression) {
+		case GZ:
+			decompressor = "gzip";
+			break;
+		case BZ2:
+			decompressor = "bzip2";
+			break;
+		case LZ4:
+			decompressor = "lz4";
+			break;
+		default:
+			decompressor = "zstd";
+			break;
+		}
+		return decompressor + " -dc " + quote(path) + " | " + grep;
+	}
+
+	/**
+	 * Read a line of the output of a command, without its line break (LF, or CR LF).
+	 * @return the line, or null at the end of the output
+	 */
+	private static String readLine(InputStream is, ByteArrayOutputStream bytes, Charset charset) throws IOException {
+		bytes.reset();
+		int b;
+		while ((b = is.read()) != -1 && b != '\n') {
+			bytes.write(b);
+		}
+		if (b == -1 && bytes.size() == 0) {
+			return null;
+		}
+		byte[] line = bytes.toByteArray();
+		int length = line.length > 0 && line[line.length - 1] == '\r' ? line.length - 1 : line.length;
+		return new String(line, 0, length, charset);
+	}
+
+	/**
+	 * Quote an argument of a shell command: between single quotes, and every single quote as '\''
+	 */
+	private static String quote(String argument) {
+		return "'" + argument.replace("'", "'\\''") + "'";
+	}
+
+	@Override
+	protected InputStream openStream() throws IOException {
+		return openStream(0);
+	}
+
+	/**
+	 * The file can be read from a position with SFTP.
+	 */
+	@Override
+	protected boolean canReadFrom() {
+		return true;
+	}
+
+	/**
+	 * The channel is kept while the content is being read, and returned to the pool when the stream is closed.
+	 */
 	@Override
-	public void copy(File destFile) throws IOException {
+	protected InputStream openStream(long position) throws IOException {
+		final ChannelSftp sftpChannel = pool.acquire(host, user, pwd);
 		try {
-			connect();
-			try {
-				sftpChannel.get(path, destFile.getPath());
-			} finally {
-	            disconnect();
-	        }
-		} catch(JSchException e) {
-			throw new IOException(e.getMessage());
+			return new FilterInputStream(sftpChannel.get(path, null, position)) {
+				private boolean eof;
+
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					eof = b == -1;
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int count = super.read(b, off, len);
+					eof = count == -1;
+					return count;
+				}
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						// A channel closed in the middle of a transfer is not reused:
+						pool.release(sftpChannel, host, user, eof);
+					}
+				}
+			};
 		} catch(SftpException e) {
+			pool.release(sftpChannel, host, user, true);
 			throw new IOException(e.getMessage());
 		}
 	}
 	
+	@Override
+	protected String getKey() {
+		return "sftp://" + host + path;
+	}
+
 	@Override
 	public String getPath() {
 		return path;
@@ -0,0 +1,299 @@
+package logbrowser.app.fileread;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+/**
+ * Pool of SSH sessions shared by all the ReadFileSsh objects.
+ *
+ * There is one session per host and user, kept alive while it is being used, and closed after a time without use.
+ * Every session can have a limited number of channels open at the same time: the SFTP channels are reused,
+ * and a caller waits when all the channels of the session are in use. The channels that run a command (exec)
+ * are never reused.
+ * If a session has been dropped by the server, it is opened again.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class SshSessionPool {
+	static Logger logger = LoggerFactory.getLogger(SshSessionPool.class);
+
+	public static final int PORT = 22;
+	public static final int MAX_CHANNELS = 8;
+	public static final int KEEP_ALIVE_INTERVAL = 15 * 1000;
+	public static final int KEEP_ALIVE_COUNT_MAX = 3;
+	public static final long IDLE_TIMEOUT = 60 * 1000;
+
+	private static final SshSessionPool INSTANCE = new SshSessionPool();
+
+	private JSch jsch;
+	private Properties config;
+	private Map<String, PooledSession> sessions;
+
+	/**
+	 * A session and its channels.
+	 */
+	private class PooledSession {
+		String host;
+		String user;
+		String pwd;
+		Session session;
+		Semaphore permits = new Semaphore(MAX_CHANNELS);
+		Deque<ChannelSftp> idleChannels = new ArrayDeque<>();
+		long lastUsed = System.currentTimeMillis();
+		boolean evicted;
+
+		PooledSession(String host, String user, String pwd) {
+			this.host = host;
+			this.user = user;
+			this.pwd = pwd;
+		}
+
+		/**
+		 * Return a connected session, opening a new one if it has not been opened yet or if it has been dropped.
+		 * The new session is connected without holding the lock, so the other callers can still take the idle
+		 * channels and release theirs, and it is published when it is connected (unless another caller has
+		 * published one meanwhile).
+		 * @param current : the session seen by the caller (can be null)
+		 */
+		Session connect(Session current) throws JSchException {
+			if (current != null && current.isConnected()) {
+				return current;
+			}
+			synchronized (this) {
+				if (session != null && session.isConnected()) {
+					return session;
+				}
+			}
+
+			logger.debug("Opening SSH session to {}@{}", user, host);
+			Session connected = jsch.getSession(user, host, PORT);
+			connected.setPassword(pwd);
+			connected.setConfig(config);
+			connected.setServerAliveInterval(KEEP_ALIVE_INTERVAL);
+			connected.setServerAliveCountMax(KEEP_ALIVE_COUNT_MAX);
+			connected.connect();
+
+			synchronized (this) {
+				if (session != null && session.isConnected()) {
+					connected.disconnect();
+					return session;
+				}
+				close();
+				session = connected;
+				return session;
+			}
+		}
+
+		/**
+		 * Close a session that has failed, unless it has already been replaced by a new one.
+		 */
+		synchronized void close(Session failed) {
+			if (session == failed) {
+				close();
+			}
+		}
+
+		void close() {
+			for (ChannelSftp channel : idleChannels) {
+				channel.disconnect();
+			}
+			idleChannels.clear();
+			if (session != null) {
+				session.disconnect();
+				session = null;
+			}
+		}
+	}
+
+	public static SshSessionPool getInstance() {
+		return INSTANCE;
+	}
+
+	private SshSessionPool() {
+		jsch = new JSch();
+		config = new Properties();
+		config.put("StrictHostKeyChecking", "no");
+		sessions = new HashMap<>();
+
+		// Close the sessions that have not been used for a while:
+		ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ssh-session-evictor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		evictor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evictIdle();
+			}
+		}, IDLE_TIMEOUT, IDLE_TIMEOUT / 2, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Get an SFTP channel to the host. It must be returned to the pool with release().
+	 * @param host
+	 * @param user
+	 * @param pwd
+	 * @return a connected SFTP channel
+	 * @throws IOException
+	 */
+	public ChannelSftp acquire(String host, String user, String pwd) throws IOException {
+		return (ChannelSftp) acquire(host, user, pwd, null);
+	}
+
+	/**
+	 * Get a channel that runs a command in the host. It must be returned to the pool with release().
+	 * The channel is not connected: get its streams, and then connect() it to run the command.
+	 * @param host
+	 * @param user
+	 * @param pwd
+	 * @param command : the command, in the charset of the host
+	 * @return the channel of the command
+	 * @throws IOException
+	 */
+	public ChannelExec exec(String host, String user, String pwd, byte[] command) throws IOException {
+		return (ChannelExec) acquire(host, user, pwd, command);
+	}
+
+	private Channel acquire(String host, String user, String pwd, byte[] command) throws IOException {
+		PooledSession pooled = getSession(host, user, pwd);
+		try {
+			pooled.permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for an SSH channel to " + host);
+		}
+
+		try {
+			Session session;
+			synchronized (pooled) {
+				if (pooled.evicted) {
+					// The session has been closed while waiting: get the new one.
+					pooled.permits.release();
+					return acquire(host, user, pwd, command);
+				}
+				pooled.lastUsed = System.currentTimeMillis();
+
+				// Reuse an open channel:
+				ChannelSftp channel;
+				while (command == null && (channel = pooled.idleChannels.poll()) != null) {
+					if (channel.isConnected() && pooled.session != null && pooled.session.isConnected()) {
+						return channel;
+					}
+					channel.disconnect();
+				}
+				session = pooled.session;
+			}
+
+			// ...or open a new one (in a new session if the current one fails).
+			// The session is not evicted meanwhile, since this caller holds one of its permits.
+			Session connected = null;
+			try {
+				connected = pooled.connect(session);
+				return openChannel(connected, command);
+			} catch (JSchException e) {
+				logger.debug("Reconnecting SSH session to {}: {}", host, e.getMessage());
+				if (connected != null) {
+					pooled.close(connected);
+				}
+				return openChannel(pooled.connect(null), command);
+			}
+		} catch (JSchException | RuntimeException e) {
+			pooled.permits.release();
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Return to the pool a channel obtained with acquire() or exec().
+	 * @param channel
+	 * @param host
+	 * @param user
+	 * @param reusable : false if the channel could be in a wrong state (eg: an error has been thrown using it)
+	 */
+	public void release(Channel channel, String host, String user, boolean reusable) {
+		PooledSession pooled;
+		synchronized (sessions) {
+			// A session with channels in use is never evicted, so it is still in the map:
+			pooled = sessions.get(user + "@" + host);
+		}
+		synchronized (pooled) {
+			if (reusable && channel instanceof ChannelSftp && channel.isConnected()) {
+				pooled.idleChannels.push((ChannelSftp) channel);
+			} else {
+				channel.disconnect();
+			}
+			pooled.lastUsed = System.currentTimeMillis();
+		}
+		pooled.permits.release();
+	}
+
+	private Channel openChannel(Session session, byte[] command) throws JSchException {
+		if (command != null) {
+			ChannelExec channel = (ChannelExec) session.openChannel("exec");
+			channel.setCommand(command);
+			return channel;
+		}
+		Channel channel = session.openChannel("sftp");
+		channel.connect();
+		return channel;
+	}
+
+	private PooledSession getSession(String host, String user, String pwd) {
+		String key = user + "@" + host;
+		synchronized (sessions) {
+			PooledSession pooled = sessions.get(key);
+			if (pooled == null) {
+				pooled = new PooledSession(host, user, pwd);
+				sessions.put(key, pooled);
+			}
+			return pooled;
+		}
+	}
+
+	/**
+	 * Close the sessions without channels in use for more than IDLE_TIMEOUT.
+	 */
+	private void evictIdle() {
+		long limit = System.currentTimeMillis() - IDLE_TIMEOUT;
+		synchronized (sessions) {
+			Iterator<PooledSession> it = sessions.values().iterator();
+			while (it.hasNext()) {
+				PooledSession pooled = it.next();
+				synchronized (pooled) {
+					if (pooled.lastUsed < limit && pooled.permits.availablePermits() == MAX_CHANNELS) {
+						logger.debug("Closing idle SSH session to {}@{}", pooled.user, pooled.host);
+						pooled.close();
+						pooled.evicted = true;
+						it.remove();
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package logbrowser.app.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import logbrowser.app.LogLine;
+
+/**
+ * The results of the search in a file: the number of lines that match the query, and the lines that are kept
+ * (within the limits of the search, see SearchLimits).
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class FoundLines {
+
+	private SearchLimits limits;
+	private List<LogLine> lines;
+	private int count;
+	private boolean complete;
+
+	FoundLines(SearchLimits limits) {
+		this.limits = limits;
+		this.lines = new ArrayList<>();
+		this.complete = true;
+	}
+
+	/**
+	 * Check if the text of the next found line is needed (if not, the line can be added without decoding it).
+	 * @return
+	 */
+	public boolean needsText() {
+		return !limits.isCountOnly() && lines.size() < limits.getMaxLinesPerFile();
+	}
+
+	/**
+	 * Add a line that matches the query.
+	 * @param lineNumber : 0 based
+	 * @param text : the text of the line (can be null if not needed, see needsText())
+	 */
+	public void add(int lineNumber, String text) {
+		if (text != null && needsText()) {
+			lines.add(new LogLine(lineNumber, text));
+		}
+		count++;
+		limits.found();
+	}
+
+	/**
+	 * Add a line that matches the query.
+	 * @param line
+	 */
+	public void add(LogLine line) {
+		add(line.getLineNumber(), line.getText());
+	}
+
+	/**
+	 * Results for a part of the file, that is searched apart (eg: in parallel with the rest of the file).
+	 * The part keeps the lines within the limit of the file; its lines are counted in the search when it is added
+	 * to the results of the file (see addPart()).
+	 * @return the results of the part, or null if the file must be searched in order ("first lines" mode)
+	 */
+	public FoundLines newPart() {
+		if (limits.isFirstLines()) {
+			return null;
+		}
+		return new FoundLines(new SearchLimits(limits.getMaxLinesPerFile(), Integer.MAX_VALUE, false, limits.isCountOnly()));
+	}
+
+	/**
+	 * Add the results of a part of the file (see newPart()), after the lines already added.
+	 * @param part
+	 * @param firstLine : the number of the first line of the part in the file
+	 */
+	public void addPart(FoundLines part, int firstLine) {
+		for (LogLine line : part.lines) {
+			add(firstLine + line.getLineNumber(), line.getText());
+		}
+		// The lines that were only counted:
+		int counted = part.count - part.lines.size();
+		count += counted;
+		limits.found(counted);
+	}
+
+	/**
+	 * Check if the search in the file must stop (in "first lines" mode, when a limit is reached).
+	 * If so, the results are marked as incomplete.
+	 * @return
+	 */
+	public boolean isStopped() {
+		if (complete && limits.isFirstLines() && (count >= limits.getMaxLinesPerFile() || limits.isGlobalLimitReached())) {
+			complete = false;
+		}
+		return !complete;
+	}
+
+	/**
+	 * @return the kept lines, in the order of the file
+	 */
+	public List<LogLine> getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the number of lines that match the query (all of them, or until the search was stopped)
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return false if the search was stopped before the end of the file (the count is a minimum)
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+}
@@ -0,0 +1,233 @@
+package logbrowser.app.search;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Search of a literal text, with the Boyer-Moore-Horspool algorithm:
+ * the text is compared from its last character, and when it doesn't match, the search skips ahead as many
+ * positions as the skip table allows (up to the length of the text), so most of the searched bytes are never compared.
+ *
+ * The text can be searched in the encoded bytes (eg: the content of a file) or in Strings (eg: the lines of a table).
+ * When the case is ignored, only the case of the ASCII letters is ignored, so the bytes and the Strings give the same results.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class LiteralMatcher {
+
+	private static final int TABLE_SIZE = 256;
+
+	private String text;
+	private boolean ignoreCase;
+	private char[] chars;
+	private byte[] bytes;
+	private int[] byteSkip;
+	private int[] charSkip;
+
+	/**
+	 * Constructor
+	 * @param text : the text to search (not empty)
+	 * @param charset : the charset of the bytes where the text will be searched
+	 */
+	public LiteralMatcher(String text, Charset charset) {
+		this(text, charset, false);
+	}
+
+	/**
+	 * Constructor
+	 * @param text : the text to search (not empty)
+	 * @param charset : the charset of the bytes where the text will be searched
+	 * @param ignoreCase : ignore the case of the ASCII letters
+	 */
+	public LiteralMatcher(String text, Charset charset, boolean ignoreCase) {
+		if (text == null || text.isEmpty()) {
+			throw new IllegalArgumentException("The text to search cannot be empty");
+		}
+		this.text = text;
+		this.ignoreCase = ignoreCase;
+
+		// When the case is ignored, the text is kept in lower case and the searched content is converted while compared:
+		chars = text.toCharArray();
+		bytes = text.getBytes(charset);
+		if (ignoreCase) {
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = fold(chars[i]);
+			}
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = fold(bytes[i]);
+			}
+		}
+
+		// Skip tables: how far the search can move when the last compared character is a given one.
+		byteSkip = new int[TABLE_SIZE];
+		Arrays.fill(byteSkip, bytes.length);
+		for (int i = 0; i < bytes.length - 1; i++) {
+			byteSkip[bytes[i] & 0xFF] = bytes.length - 1 - i;
+		}
+
+		// (characters sharing the same low byte share the same entry, with the smallest skip)
+		charSkip = new int[TABLE_SIZE];
+		Arrays.fill(charSkip, chars.length);
+		for (int i = 0; i < chars.length - 1; i++) {
+			charSkip[chars[i] & 0xFF] = chars.length - 1 - i;
+		}
+	}
+
+	/**
+	 * Search the text in a buffer of bytes.
+	 * @param buffer
+	 * @param from : position where the search starts
+	 * @param to : position where the search ends (exclusive)
+	 * @return the position of the first occurrence, or -1 if not found
+	 */
+	public int indexOf(ByteBuffer buffer, int from, int to) {
+		if (bytes.length == 1 && (!ignoreCase || !isLetter(bytes[0]))) {
+			// The skip would always be 1: it is faster to read the buffer 8 bytes at a time.
+			return indexOf(buffer, bytes[0], from, to);
+		}
+		int last = bytes.length - 1;
+		byte lastByte = bytes[last];
+		for (int i = from; i <= to - bytes.length; ) {
+			byte b = buffer.get(i + last);
+			if (ignoreCase) {
+				b = fold(b);
+			}
+			if (b == lastByte) {
+				int j = last - 1;
+				while (j >= 0 && (ignoreCase ? fold(buffer.get(i + j)) : buffer.get(i + j)) == bytes[j]) {
+					j--;
+				}
+				if (j < 0) {
+					return i;
+				}
+			}
+			i += byteSkip[b & 0xFF];
+		}
+		return -1;
+	}
+
+	/**
+	 * Search the text in a String.
+	 * @param s
+	 * @param from : position where the search starts
+	 * @return the position of the first occurrence, or -1 if not found
+	 */
+	public int indexOf(String s, int from) {
+		int last = chars.length - 1;
+		char lastChar = chars[last];
+		for (int i = Math.max(from, 0); i <= s.length() - chars.length; ) {
+			char c = s.charAt(i + last);
+			if (ignoreCase) {
+				c = fold(c);
+			}
+			if (c == lastChar) {
+				int j = last - 1;
+				while (j >= 0 && (ignoreCase ? fold(s.charAt(i + j)) : s.charAt(i + j)) == chars[j]) {
+					j--;
+				}
+				if (j < 0) {
+					return i;
+				}
+			}
+			i += charSkip[c & 0xFF];
+		}
+		return -1;
+	}
+
+	/**
+	 * Search a byte in a buffer, reading the buffer 8 bytes at a time.
+	 * @param buffer : a buffer in big-endian order (the default order)
+	 * @param b
+	 * @param from : position where the search starts
+	 * @param to : position where the search ends (exclusive)
+	 * @return the position of the first occurrence, or -1 if not found
+	 */
+	public static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+		int i = from;
+		long pattern = (b & 0xFFL) * 0x0101010101010101L;
+		for (; i + 8 <= to; i += 8) {
+			long zeros = zeroBytes(buffer.getLong(i) ^ pattern);
+			if (zeros != 0) {
+				return i + Long.numberOfLeadingZeros(zeros) / 8;
+			}
+		}
+		for (; i < to; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Count the occurrences of a byte in a buffer, reading the buffer 8 bytes at a time.
+	 * @param buffer
+	 * @param b
+	 * @param from : position where the count starts
+	 * @param to : position where the count ends (exclusive)
+	 * @return the number of occurrences
+	 */
+	public static int count(ByteBuffer buffer, byte b, int from, int to) {
+		int count = 0;
+		int i = from;
+		long pattern = (b & 0xFFL) * 0x0101010101010101L;
+		for (; i + 8 <= to; i += 8) {
+			count += Long.bitCount(zeroBytes(buffer.getLong(i) ^ pattern));
+		}
+		for (; i < to; i++) {
+			if (buffer.get(i) == b) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the searched text
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the length of the searched text, in characters
+	 */
+	public int length() {
+		return text.length();
+	}
+
+	/**
+	 * @return true if the case of the ASCII letters is ignored
+	 */
+	public boolean isIgnoreCase() {
+		return ignoreCase;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+	// Aux. functions --------------------------------------
+
+	/**
+	 * @return a word with the high bit set in the bytes that are 0, and the rest of bits cleared
+	 */
+	private static long zeroBytes(long word) {
+		return ~(((word & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL) | word | 0x7F7F7F7F7F7F7F7FL);
+	}
+
+	private static boolean isLetter(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+	}
+
+	private static byte fold(byte b) {
+		return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+	private static char fold(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+}
@@ -0,0 +1,345 @@
+package logbrowser.app.search;
+
+import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+import logbrowser.app.LogBrowserException;
+
+/**
+ * A search, compiled once and evaluated on every line.
+ *
+ * A query can be a text, a regular expression, or a combination of queries with AND, OR and NOT (see QueryParser).
+ * Every query gives a prefilter: a text that every matching line must contain, that can be searched in the bytes
+ * of the file (see LiteralMatcher). Only the lines that contain the prefilter are decoded and evaluated.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public abstract class Query {
+
+	/**
+	 * Compile a query.
+	 * A text without operators, quotes or regular expressions is searched as it is, as a single text.
+	 * @param text : the query (not empty)
+	 * @param ignoreCase : ignore the case of the ASCII letters
+	 * @return the compiled query
+	 * @throws LogBrowserException if the query is not valid
+	 */
+	public static Query parse(String text, boolean ignoreCase) throws LogBrowserException {
+		return new QueryParser(text, ignoreCase).parse();
+	}
+
+	/**
+	 * Check if a line matches the query.
+	 * @param line
+	 * @return
+	 */
+	public abstract boolean matches(String line);
+
+	/**
+	 * Find the occurrences of the searched texts in a line (for highlighting them).
+	 * @param line
+	 * @param found : the characters of the occurrences are set
+	 * @return the number of occurrences
+	 */
+	public abstract int find(String line, BitSet found);
+
+	/**
+	 * @return a text that every matching line contains, or null if there isn't any
+	 */
+	public abstract LiteralMatcher getPrefilter();
+
+	/**
+	 * Check if every line that contains the prefilter matches the query (the query is a single text),
+	 * so the lines don't need to be decoded for knowing if they match.
+	 * @return
+	 */
+	public boolean isLiteral() {
+		return false;
+	}
+
+	/**
+	 * Find the lines of a file that can match the query, in the index of the file.
+	 * The rest of the lines don't match; the candidates must be evaluated.
+	 * @param index
+	 * @return the candidate lines, or null if any line can match
+	 */
+	public BitSet candidates(TokenIndex index) {
+		LiteralMatcher prefilter = getPrefilter();
+		return prefilter == null ? null : index.find(prefilter.getText());
+	}
+
+	/**
+	 * Check if any line of a file may match the query, with the filter of the file.
+	 * @param filter
+	 * @return false if no line of the file matches
+	 */
+	public boolean mayMatch(TrigramFilter filter) {
+		LiteralMatcher prefilter = getPrefilter();
+		return prefilter == null || filter.mayContain(prefilter.getText());
+	}
+
+	// Types of queries --------------------------------------
+
+	/**
+	 * A literal text.
+	 */
+	static class Text extends Query {
+		private LiteralMatcher matcher;
+
+		Text(String text, boolean ignoreCase) {
+			this.matcher = new LiteralMatcher(text, Charset.defaultCharset(), ignoreCase);
+		}
+
+		@Override
+		public boolean matches(String line) {
+			return matcher.indexOf(line, 0) != -1;
+		}
+
+		@Override
+		public int find(String line, BitSet found) {
+			int count = 0;
+			for (int pos = matcher.indexOf(line, 0); pos != -1; pos = matcher.indexOf(line, pos + 1)) {
+				found.set(pos, pos + matcher.length());
+				count++;
+			}
+			return count;
+		}
+
+		@Override
+		public LiteralMatcher getPrefilter() {
+			return matcher;
+		}
+
+		@Override
+		public boolean isLiteral() {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "\"" + matcher.getText() + "\"";
+		}
+	}
+
+	/**
+	 * A regular expression (java.util.regex).
+	 */
+	static class Regex extends Query {
+		private Pattern pattern;
+		private LiteralMatcher prefilter;
+
+		Regex(Pattern pattern, String requiredText, boolean ignoreCase) {
+			this.pattern = pattern;
+			if (requiredText != null) {
+				this.prefilter = new LiteralMatcher(requiredText, Charset.defaultCharset(), ignoreCase);
+			}
+		}
+
+		@Override
+		public boolean matches(String line) {
+			return pattern.matcher(line).find();
+		}
+
+		@Override
+		public int find(String line, BitSet found) {
+			int count = 0;
+			Matcher m = pattern.matcher(line);
+			while (m.find()) {
+				// Empty matches are not highlighted:
+				if (m.end() > m.start()) {
+					found.set(m.start(), m.end());
+					count++;
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public LiteralMatcher getPrefilter() {
+			return prefilter;
+		}
+
+		@Override
+		public String toString() {
+			return "/" + pattern.pattern() + "/";
+		}
+	}
+
+	/**
+	 * All the queries must match.
+	 */
+	static class And extends Query {
+		private List<Query> queries;
+		private LiteralMatcher prefilter;
+
+		And(List<Query> queries) {
+			this.queries = queries;
+			// Any of the prefilters is valid, the longest one is the most selective:
+			for (Query query : queries) {
+				LiteralMatcher p = query.getPrefilter();
+				if (p != null && (prefilter == null || p.length() > prefilter.length())) {
+					prefilter = p;
+				}
+			}
+		}
+
+		@Override
+		public boolean matches(String line) {
+			for (Query query : queries) {
+				if (!query.matches(line)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int find(String line, BitSet found) {
+			int count = 0;
+			for (Query query : queries) {
+				count += query.find(line, found);
+			}
+			return count;
+		}
+
+		@Override
+		public LiteralMatcher getPrefilter() {
+			return prefilter;
+		}
+
+		@Override
+		public boolean mayMatch(TrigramFilter filter) {
+			for (Query query : queries) {
+				if (!query.mayMatch(filter)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public BitSet candidates(TokenIndex index) {
+			// The lines must be candidates of all the queries:
+			BitSet lines = null;
+			for (Query query : queries) {
+				BitSet candidates = query.candidates(index);
+				if (candidates != null) {
+					if (lines == null) {
+						lines = candidates;
+					} else {
+						lines.and(candidates);
+					}
+				}
+			}
+			return lines;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + StringUtils.join(queries, " AND ") + ")";
+		}
+	}
+
+	/**
+	 * Any of the queries must match.
+	 */
+	static class Or extends Query {
+		private List<Query> queries;
+
+		Or(List<Query> queries) {
+			this.queries = queries;
+		}
+
+		@Override
+		public boolean matches(String line) {
+			for (Query query : queries) {
+				if (query.matches(line)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int find(String line, BitSet found) {
+			int count = 0;
+			for (Query query : queries) {
+				count += query.find(line, found);
+			}
+			return count;
+		}
+
+		@Override
+		public LiteralMatcher getPrefilter() {
+			// The lines may contain any of the texts:
+			return null;
+		}
+
+		@Override
+		public boolean mayMatch(TrigramFilter filter) {
+			for (Query query : queries) {
+				if (query.mayMatch(filter)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public BitSet candidates(TokenIndex index) {
+			// The lines can be candidates of any of the queries:
+			BitSet lines = new BitSet();
+			for (Query query : queries) {
+				BitSet candidates = query.candidates(index);
+				if (candidates == null) {
+					return null;
+				}
+				lines.or(candidates);
+			}
+			return lines;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + StringUtils.join(queries, " OR ") + ")";
+		}
+	}
+
+	/**
+	 * The query must not match.
+	 */
+	static class Not extends Query {
+		private Query query;
+
+		Not(Query query) {
+			this.query = query;
+		}
+
+		@Override
+		public boolean matches(String line) {
+			return !query.matches(line);
+		}
+
+		@Override
+		public int find(String line, BitSet found) {
+			// Nothing to highlight:
+			return 0;
+		}
+
+		@Override
+		public LiteralMatcher getPrefilter() {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "NOT " + query;
+		}
+	}
+}
@@ -0,0 +1,453 @@
+package logbrowser.app.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import logbrowser.app.LogBrowserException;
+
+/**
+ * Compile the text of a search into a Query.
+ *
+ * Syntax:
+ *   - words: the text between operators is searched as it is, including the spaces (eg: connection refused)
+ *   - "text": a quoted text, that can contain operators or parentheses (\" for a quote)
+ *   - /regex/: a regular expression (java.util.regex syntax, \/ for a slash)
+ *   - AND, OR, NOT (in upper case) and parentheses. Queries without operator between them must all match (AND).
+ *     NOT has the highest precedence, then AND, then OR.
+ * A text without quotes, regular expressions or operators is searched as it is, like in the previous versions.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+class QueryParser {
+
+	private enum Type { WORDS, QUOTED, REGEX, AND, OR, NOT, OPEN, CLOSE }
+
+	private static class Token {
+		Type type;
+		String text;
+
+		Token(Type type, String text) {
+			this.type = type;
+			this.text = text;
+		}
+	}
+
+	private String text;
+	private boolean ignoreCase;
+	private List<Token> tokens;
+	private int next;
+
+	QueryParser(String text, boolean ignoreCase) {
+		this.text = text;
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * @return the compiled query
+	 * @throws LogBrowserException if the query is not valid
+	 */
+	Query parse() throws LogBrowserException {
+		if (text == null || text.trim().isEmpty()) {
+			throw new LogBrowserException("The text to search is empty");
+		}
+		tokens = tokenize();
+
+		// A plain text is a single text:
+		boolean plain = true;
+		for (Token token : tokens) {
+			if (token.type != Type.WORDS && token.type != Type.OPEN && token.type != Type.CLOSE) {
+				plain = false;
+			}
+		}
+		if (plain) {
+			return new Query.Text(text, ignoreCase);
+		}
+
+		next = 0;
+		Query query = parseOr();
+		if (next < tokens.size()) {
+			throw new LogBrowserException("Unexpected '" + tokens.get(next).text + "' in the query");
+		}
+		return query;
+	}
+
+	// Grammar --------------------------------------
+
+	private Query parseOr() throws LogBrowserException {
+		List<Query> queries = new ArrayList<>();
+		queries.add(parseAnd());
+		while (accept(Type.OR)) {
+			queries.add(parseAnd());
+		}
+		return queries.size() == 1 ? queries.get(0) : new Query.Or(queries);
+	}
+
+	private Query parseAnd() throws LogBrowserException {
+		List<Query> queries = new ArrayList<>();
+		queries.add(parseNot());
+		while (true) {
+			if (accept(Type.AND)) {
+				queries.add(parseNot());
+			} else if (next < tokens.size() && tokens.get(next).type != Type.OR && tokens.get(next).type != Type.CLOSE) {
+				// Implicit AND:
+				queries.add(parseNot());
+			} else {
+				break;
+			}
+		}
+		return queries.size() == 1 ? queries.get(0) : new Query.And(queries);
+	}
+
+	private Query parseNot() throws LogBrowserException {
+		if (accept(Type.NOT)) {
+			return new Query.Not(parseNot());
+		}
+		return parseTerm();
+	}
+
+	private Query parseTerm() throws LogBrowserException {
+		if (next >= tokens.size()) {
+			throw new LogBrowserException("Incomplete query: " + text);
+		}
+		Token token = tokens.get(next++);
+		switch (token.type) {
+		case WORDS:
+		case QUOTED:
+			return new Query.Text(token.text, ignoreCase);
+		case REGEX:
+			return compileRegex(token.text);
+		case OPEN:
+			Query query = parseOr();
+			if (!accept(Type.CLOSE)) {
+				throw new LogBrowserException("Missing ')' in the query: " + text);
+			}
+			return query;
+		default:
+			throw new LogBrowserException("Unexpected '" + token.text + "' in the query");
+		}
+	}
+
+	private boolean accept(Type type) {
+		if (next < tokens.size() && tokens.get(next).type == type) {
+			next++;
+			return true;
+		}
+		return false;
+	}
+
+	private Query compileRegex(String regex) throws LogBrowserException {
+		try {
+			Pattern pattern = Pattern.compile(regex, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+			return new Query.Regex(pattern, requiredText(regex), ignoreCase);
+		} catch (PatternSyntaxException e) {
+			throw new LogBrowserException("Invalid regular expression /" + regex + "/: " + e.getDescription());
+		}
+	}
+
+	// Tokens --------------------------------------
+
+	private List<Token> tokenize() throws LogBrowserException {
+		List<Token> tokens = new ArrayList<>();
+		int wordsStart = -1;
+		int wordsEnd = -1;
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+
+			// Parentheses that open groups:
+			if (c == '(') {
+				wordsStart = addWords(tokens, wordsStart, wordsEnd);
+				tokens.add(new Token(Type.OPEN, "("));
+				i++;
+				continue;
+			}
+
+			// Quoted texts and regular expressions (only at the start of a word, so they can be inside a text):
+			if (c == '"' || c == '/') {
+				int end = closing(c, i + 1);
+				if (end != -1) {
+					String content = text.substring(i + 1, end - 1).replace("\\" + c, String.valueOf(c));
+					if (content.isEmpty()) {
+						throw new LogBrowserException("Empty " + (c == '"' ? "text" : "regular expression") + " in the query");
+					}
+					wordsStart = addWords(tokens, wordsStart, wordsEnd);
+					tokens.add(new Token(c == '"' ? Type.QUOTED : Type.REGEX, content));
+					i = end;
+					continue;
+				}
+				// (not closed: it is part of a word)
+			}
+
+			// A word, with the parentheses that close groups after it:
+			int end = i;
+			while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+				end++;
+			}
+			int closes = 0;
+			for (int j = i; j < end; j++) {
+				if (text.charAt(j) == '(') {
+					closes--;
+				} else if (text.charAt(j) == ')') {
+					closes++;
+				}
+			}
+			int wordEnd = end;
+			for (; closes > 0 && wordEnd > i && text.charAt(wordEnd - 1) == ')'; closes--) {
+				wordEnd--;
+			}
+
+			String word = text.substring(i, wordEnd);
+			boolean operator = word.equals("AND") || word.equals("OR") || word.equals("NOT");
+			if (operator) {
+				wordsStart = addWords(tokens, wordsStart, wordsEnd);
+				tokens.add(new Token(Type.valueOf(word), word));
+			} else if (!word.isEmpty()) {
+				// Consecutive words are joined with the spaces between them:
+				if (wordsStart == -1) {
+					wordsStart = i;
+				}
+				wordsEnd = wordEnd;
+			}
+			if (wordEnd < end) {
+				wordsStart = addWords(tokens, wordsStart, wordsEnd);
+				for (int j = wordEnd; j < end; j++) {
+					tokens.add(new Token(Type.CLOSE, ")"));
+				}
+			}
+			i = end;
+		}
+		addWords(tokens, wordsStart, wordsEnd);
+		return tokens;
+	}
+
+	/**
+	 * Add the pending words as a token.
+	 * @return -1 (no pending words)
+	 */
+	private int addWords(List<Token> tokens, int wordsStart, int wordsEnd) {
+		if (wordsStart != -1) {
+			tokens.add(new Token(Type.WORDS, text.substring(wordsStart, wordsEnd)));
+		}
+		return -1;
+	}
+
+	/**
+	 * The closing delimiter must be at the end of a word (for a regular expression, followed by a space, a parenthesis
+	 * or the end of the text) and not escaped with \.
+	 * @return the position after the closing delimiter, or -1 if not found
+	 */
+	private int closing(char delimiter, int from) {
+		for (int i = from; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\\' && i + 1 < text.length() && text.charAt(i + 1) == delimiter) {
+				i++;
+			} else if (c == delimiter) {
+				boolean endOfWord = i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1)) ||
+									text.charAt(i + 1) == ')';
+				if (delimiter == '"' || endOfWord) {
+					return i + 1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	// Prefilter of regular expressions --------------------------------------
+
+	/**
+	 * Find a text that every match of a regular expression must contain:
+	 * the longest sequence of literal characters outside groups, classes and alternatives.
+	 * @param regex
+	 * @return the text, or null if it cannot be found
+	 */
+	static String requiredText(String regex) {
+		String best = "";
+		StringBuilder current = new StringBuilder();
+		int i = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			Character literal = null;
+			int end = i + 1;
+
+			if (c == '\\') {
+				if (i + 1 >= regex.length()) {
+					return null;
+				}
+				char escaped = regex.charAt(i + 1);
+				end = escapeEnd(regex, i);
+				if (!Character.isLetterOrDigit(escaped)) {
+					literal = escaped;
+				} else if (escaped == 'Q') {
+					// Quoted text:
+					int q = regex.indexOf("\\E", end);
+					String quoted = regex.substring(end, q == -1 ? regex.length() : q);
+					current.append(quoted);
+					end = q == -1 ? regex.length() : q + 2;
+					if (end < regex.length() && "*?{".indexOf(regex.charAt(end)) != -1 && current.length() > 0) {
+						// The last character is optional:
+						current.setLength(current.length() - 1);
+					}
+					best = longest(best, current);
+					current.setLength(0);
+					i = end;
+					continue;
+				}
+			} else if (c == '|') {
+				// Alternatives: no text is required
+				return null;
+			} else if (c == '[') {
+				end = skipClass(regex, i);
+			} else if (c == '(') {
+				if (regex.startsWith("(?", i) && i + 2 < regex.length() &&
+					"idmsuxU-".indexOf(regex.charAt(i + 2)) != -1) {
+					// Flags could change how the text is compared
+					return null;
+				}
+				end = skipGroup(regex, i);
+				if (end == -1) {
+					return null;
+				}
+			} else if (".^$*+?{)".indexOf(c) == -1) {
+				literal = c;
+			}
+
+			// A quantifier after the element:
+			char quantifier = end < regex.length() ? regex.charAt(end) : 0;
+			boolean optional = quantifier == '*' || quantifier == '?' || quantifier == '{';
+
+			if (literal != null && !optional) {
+				current.append(literal);
+				if (quantifier == '+') {
+					// The character can be repeated: the sequence ends here.
+					best = longest(best, current);
+					current.setLength(0);
+				}
+			} else {
+				best = longest(best, current);
+				current.setLength(0);
+			}
+			if (c == '{') {
+				end = Math.max(end, regex.indexOf('}', i) + 1);
+			}
+			i = end;
+		}
+		best = longest(best, current);
+		return best.isEmpty() ? null : best;
+	}
+
+	/**
+	 * Other escapes (classes, boundaries, back references, characters by code...) are not taken as literals,
+	 * but all their characters must be skipped: eg: the digits of \x41 are not literal characters.
+	 * @param start : the position of the \
+	 * @return the position after the end of an escape
+	 */
+	private static int escapeEnd(String regex, int start) {
+		int i = start + 2;
+		char escaped = regex.charAt(start + 1);
+		switch (escaped) {
+		case 'x':
+			// \xhh or \x{h...h}
+			return i < regex.length() && regex.charAt(i) == '{' ? closingEnd(regex, '}', i) : Math.min(i + 2, regex.length());
+		case 'u':
+			// \\u and 4 hexadecimal digits
+			return Math.min(i + 4, regex.length());
+		case '0':
+			// \0n, \0nn or \0mnn (m <= 3)
+			int digits = 0;
+			while (i + digits < regex.length() && digits < 3 && regex.charAt(i + digits) >= '0' &&
+				   regex.charAt(i + digits) <= '7') {
+				digits++;
+			}
+			if (digits == 3 && regex.charAt(i) > '3') {
+				digits--;
+			}
+			return i + digits;
+		case 'c':
+			// \cX
+			return Math.min(i + 1, regex.length());
+		case 'k':
+			// \k<name>
+			return closingEnd(regex, '>', i);
+		case 'p':
+		case 'P':
+		case 'N':
+			// \p{name} or \pL
+			return i < regex.length() && regex.charAt(i) == '{' ? closingEnd(regex, '}', i) : Math.min(i + 1, regex.length());
+		default:
+			if (escaped >= '1' && escaped <= '9') {
+				// A back reference takes all the digits that it can
+				while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+					i++;
+				}
+			}
+			return i;
+		}
+	}
+
+	/**
+	 * @return the position after a closing character, or the end of the text if it is not found
+	 */
+	private static int closingEnd(String regex, char closing, int from) {
+		int end = regex.indexOf(closing, from);
+		return end == -1 ? regex.length() : end + 1;
+	}
+
+	private static String longest(String best, StringBuilder current) {
+		return current.length() > best.length() ? current.toString() : best;
+	}
+
+	/**
+	 * @return the position after the end of a character class
+	 */
+	private static int skipClass(String regex, int start) {
+		int depth = 0;
+		for (int i = start; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				depth++;
+				// A ']' just after the opening is a character:
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+					i++;
+				}
+			} else if (c == ']') {
+				depth--;
+				if (depth == 0) {
+					return i + 1;
+				}
+			}
+		}
+		return regex.length();
+	}
+
+	/**
+	 * @return the position after the end of a group, or -1 if it is not closed
+	 */
+	private static int skipGroup(String regex, int start) {
+		int depth = 0;
+		for (int i = start; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				i = skipClass(regex, i) - 1;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+				if (depth == 0) {
+					return i + 1;
+				}
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,87 @@
+package logbrowser.app.search;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits of the results of a search, shared by all the files of the search.
+ *
+ *   - maxLinesPerFile: the found lines kept for every file; the rest are only counted.
+ *   - maxLines: the found lines kept for the whole search (see LogBrowser.search()).
+ *   - firstLines: stop reading a file as soon as a limit is reached (the count of found lines is then incomplete).
+ *   - countOnly: only count the found lines, without keeping them.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class SearchLimits {
+
+	public static final int DEFAULT_MAX_LINES_PER_FILE = 10000;
+	public static final int DEFAULT_MAX_LINES = 100000;
+
+	private int maxLinesPerFile;
+	private int maxLines;
+	private boolean firstLines;
+	private boolean countOnly;
+
+	// Lines found in all the files:
+	private AtomicInteger found = new AtomicInteger();
+
+	/**
+	 * Constructor
+	 * @param maxLinesPerFile : max. found lines kept for a file (DEFAULT_MAX_LINES_PER_FILE if not positive)
+	 * @param maxLines : max. found lines kept for the whole search (DEFAULT_MAX_LINES if not positive)
+	 * @param firstLines : stop reading the files when a limit is reached
+	 * @param countOnly : don't keep the found lines
+	 */
+	public SearchLimits(int maxLinesPerFile, int maxLines, boolean firstLines, boolean countOnly) {
+		this.maxLinesPerFile = maxLinesPerFile > 0 ? maxLinesPerFile : DEFAULT_MAX_LINES_PER_FILE;
+		this.maxLines = maxLines > 0 ? maxLines : DEFAULT_MAX_LINES;
+		this.firstLines = firstLines;
+		this.countOnly = countOnly;
+	}
+
+	/**
+	 * @return new empty results for a file, that apply these limits
+	 */
+	public FoundLines newFoundLines() {
+		return new FoundLines(this);
+	}
+
+	/**
+	 * A line has been found in any file.
+	 */
+	void found() {
+		found.incrementAndGet();
+	}
+
+	/**
+	 * Some lines have been found in any file.
+	 * @param count
+	 */
+	void found(int count) {
+		found.addAndGet(count);
+	}
+
+	/**
+	 * @return true if the search must stop reading the files (a limit has been reached in "first lines" mode)
+	 */
+	boolean isGlobalLimitReached() {
+		return firstLines && found.get() >= maxLines;
+	}
+
+	public int getMaxLinesPerFile() {
+		return maxLinesPerFile;
+	}
+
+	public int getMaxLines() {
+		return maxLines;
+	}
+
+	public boolean isFirstLines() {
+		return firstLines;
+	}
+
+	public boolean isCountOnly() {
+		return countOnly;
+	}
+}
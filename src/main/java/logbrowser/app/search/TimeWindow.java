@@ -0,0 +1,209 @@
+package logbrowser.app.search;
+
+import java.nio.ByteBuffer;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+import logbrowser.app.LogBrowserException;
+
+/**
+ * A time of the day window of a search: only the lines with a timestamp from the start of the window (included)
+ * until its end (not included) are searched. Eg: 14:00 - 14:30.
+ *
+ * The timestamp is at the start of every line, in the format of the log configuration (see withFormat()).
+ * The lines without timestamp (eg: the lines of a stack trace) have the time of the previous line.
+ * The lines of a file must be in chronological order, so the start and the end of the window can be found
+ * with a binary search on the timestamps of the lines (see seek()), without reading the rest of the file.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class TimeWindow {
+
+	public static final int NO_TIME = -1;
+
+	// Max. bytes of a line that are parsed as timestamp:
+	private static final int MAX_TIMESTAMP_LENGTH = 64;
+
+	// Binary search until the range is shorter than this, then linear:
+	private static final int LINEAR_SEEK = 4096;
+
+	private static final byte LF = '\n';
+
+	private int from;
+	private int to;
+	private SimpleDateFormat format;
+	private Calendar calendar;
+
+	// Time of the last line read with compare():
+	private int lastTime = NO_TIME;
+
+	/**
+	 * Constructor
+	 * @param from : the start of the window, in ms from 00:00
+	 * @param to : the end of the window (not included), in ms from 00:00
+	 * @throws LogBrowserException if the window is empty
+	 */
+	public TimeWindow(int from, int to) throws LogBrowserException {
+		if (from >= to) {
+			throw new LogBrowserException("Time From must be before Time To");
+		}
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Parse a time of the day.
+	 * @param text : HH:mm or HH:mm:ss
+	 * @return the time in ms from 00:00
+	 * @throws LogBrowserException if the time is not valid
+	 */
+	public static int parseTime(String text) throws LogBrowserException {
+		String[] parts = text.trim().split(":");
+		try {
+			if (parts.length < 2 || parts.length > 3) {
+				throw new NumberFormatException();
+			}
+			int hours = Integer.parseInt(parts[0]);
+			int minutes = Integer.parseInt(parts[1]);
+			int seconds = parts.length == 3 ? Integer.parseInt(parts[2]) : 0;
+			if (hours < 0 || hours > 24 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59 ||
+				(hours == 24 && minutes + seconds > 0)) {
+				throw new NumberFormatException();
+			}
+			return ((hours * 60 + minutes) * 60 + seconds) * 1000;
+		} catch (NumberFormatException e) {
+			throw new LogBrowserException("Invalid time: " + text + " (HH:mm or HH:mm:ss)");
+		}
+	}
+
+	/**
+	 * The window for the files of a log configuration, that can find the times of their lines.
+	 * The result keeps the state of the lines read (see compare()), so it must be used for a single file.
+	 * @param timestampFormat : the format of the timestamps (see SimpleDateFormat), eg: yyyy-MM-dd HH:mm:ss,SSS
+	 *                          (the names of months and days are in English, as written by the loggers)
+	 * @return a new window
+	 */
+	public TimeWindow withFormat(String timestampFormat) {
+		return new TimeWindow(this, timestampFormat);
+	}
+
+	private TimeWindow(TimeWindow window, String timestampFormat) {
+		this.from = window.from;
+		this.to = window.to;
+		this.format = new SimpleDateFormat(timestampFormat, Locale.ENGLISH);
+		this.format.setLenient(false);
+		this.calendar = Calendar.getInstance();
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public int getTo() {
+		return to;
+	}
+
+	// Times of the lines --------------------------------------
+
+	/**
+	 * The time of a line.
+	 * @param line
+	 * @return the time in ms from 00:00, or NO_TIME if the line doesn't start with a timestamp
+	 */
+	public int getTime(String line) {
+		Date date = format.parse(line, new ParsePosition(0));
+		if (date == null) {
+			return NO_TIME;
+		}
+		calendar.setTime(date);
+		return ((calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE)) * 60
+				+ calendar.get(Calendar.SECOND)) * 1000 + calendar.get(Calendar.MILLISECOND);
+	}
+
+	/**
+	 * The time of a line, in the bytes of a file (the timestamp must be ASCII).
+	 * @param buffer
+	 * @param start : the start of the line
+	 * @param end : the end of the line
+	 * @return the time in ms from 00:00, or NO_TIME if the line doesn't start with a timestamp
+	 */
+	public int getTime(ByteBuffer buffer, int start, int end) {
+		char[] chars = new char[Math.min(end - start, MAX_TIMESTAMP_LENGTH)];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (buffer.get(start + i) & 0xff);
+		}
+		return getTime(new String(chars));
+	}
+
+	/**
+	 * Compare a line with the window, reading the lines one by one in the order of the file.
+	 * @param line
+	 * @return a negative number if the line is before the window, 0 if it is inside, and a positive number after it
+	 */
+	public int compare(String line) {
+		int time = getTime(line);
+		if (time != NO_TIME) {
+			lastTime = time;
+		}
+		if (lastTime == NO_TIME || lastTime < from) {
+			return -1;
+		}
+		return lastTime < to ? 0 : 1;
+	}
+
+	/**
+	 * Find the first line with a timestamp at or after a time, in a buffer of lines in chronological order.
+	 * A binary search is done on the timestamps of the lines, so only some of the lines are parsed.
+	 * @param buffer
+	 * @param start : the start of a line in the buffer, where the search starts
+	 * @param limit : the end of the lines in the buffer
+	 * @param time : in ms from 00:00
+	 * @return the start of the line, or limit if all the lines are before the time
+	 */
+	public int seek(ByteBuffer buffer, int start, int limit, int time) {
+		// All the lines with timestamp before lo are before the time:
+		int lo = start;
+		int hi = limit;
+		while (hi - lo > LINEAR_SEEK) {
+			int mid = lo + (hi - lo) / 2;
+			int line = nextLine(buffer, mid - 1, hi);
+			int lineTime = NO_TIME;
+			while (line < hi && (lineTime = getTime(buffer, line, lineEnd(buffer, line, hi))) == NO_TIME) {
+				line = nextLine(buffer, line, hi);
+			}
+			if (line == hi) {
+				// No timestamps in the second half:
+				hi = mid;
+			} else if (lineTime < time) {
+				lo = nextLine(buffer, line, hi);
+			} else {
+				hi = line;
+			}
+		}
+
+		for (int line = lo; line < limit; line = nextLine(buffer, line, limit)) {
+			int lineTime = getTime(buffer, line, lineEnd(buffer, line, limit));
+			if (lineTime != NO_TIME && lineTime >= time) {
+				return line;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * @return the start of the line after a position
+	 */
+	private static int nextLine(ByteBuffer buffer, int position, int limit) {
+		int end = LiteralMatcher.indexOf(buffer, LF, position, limit);
+		return end == -1 ? limit : end + 1;
+	}
+
+	private static int lineEnd(ByteBuffer buffer, int start, int limit) {
+		int end = LiteralMatcher.indexOf(buffer, LF, start, limit);
+		return end == -1 ? limit : end;
+	}
+}
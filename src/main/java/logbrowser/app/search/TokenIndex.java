@@ -0,0 +1,353 @@
+package logbrowser.app.search;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Inverted index of a file: the lines where every token of the file appears, and the position of every line.
+ *
+ * The tokens are the sequences of letters, digits, '_' and non ASCII characters, in lower case (only A-Z).
+ * Tokens longer than MAX_TOKEN_LENGTH are kept truncated.
+ * The tokens are kept in a dictionary of bytes, one token per line, so a text can be searched in all the tokens
+ * at once (see find()). The lines of every token are kept as the differences between them, encoded as variable length
+ * integers (postings).
+ *
+ * The index gives the lines that can match a text (candidates): the lines that don't contain its tokens can't match,
+ * the rest must be evaluated. See Query.candidates() and TokenIndexBuilder.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class TokenIndex {
+
+	public static final int MAX_TOKEN_LENGTH = 256;
+
+	// Incomplete tokens shorter than this are only looked up if there are no other tokens:
+	private static final int MIN_OPEN_LENGTH = 3;
+
+	static final byte SEPARATOR = '\n';
+
+	private static final boolean[] TOKEN = new boolean[256];
+	static {
+		for (int b = 0; b < 256; b++) {
+			TOKEN[b] = (b >= '0' && b <= '9') || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || b == '_' || b >= 0x80;
+		}
+	}
+
+	private Charset charset;
+
+	// Start of every line, and end of the last one:
+	private long[] lineStarts;
+
+	// Tokens (separated by SEPARATOR), start of every token, and the tokens that are truncated:
+	private byte[] dictionary;
+	private int[] tokenStarts;
+	private int[] truncated;
+
+	// Lines of every token:
+	private byte[] postings;
+	private int[] postingStarts;
+
+	TokenIndex(long[] lineStarts, byte[] dictionary, int[] tokenStarts, int[] truncated, byte[] postings, int[] postingStarts) {
+		this.charset = Charset.defaultCharset();
+		this.lineStarts = lineStarts;
+		this.dictionary = dictionary;
+		this.tokenStarts = tokenStarts;
+		this.truncated = truncated;
+		this.postings = postings;
+		this.postingStarts = postingStarts;
+	}
+
+	/**
+	 * Check if a byte is part of the tokens (as encoded in an ASCII compatible charset).
+	 */
+	static boolean isToken(byte b) {
+		return TOKEN[b & 0xff];
+	}
+
+	private static boolean isToken(char c) {
+		return c >= 0x80 || TOKEN[c];
+	}
+
+	/**
+	 * Find the lines that can contain a text.
+	 * Every token of the text must be in the line: the tokens inside the text must be complete tokens of the line,
+	 * the first and the last one can be the end or the start of a token of the line.
+	 * The complete tokens are looked up first (they are the most selective); short incomplete tokens, that can be part
+	 * of many tokens, are only looked up if there are no other tokens.
+	 * @param text
+	 * @return the candidate lines, or null if the text has no tokens (any line can contain it)
+	 */
+	public BitSet find(String text) {
+		// Tokens of the text: complete ones first, then the longest ones:
+		List<Piece> pieces = new ArrayList<>();
+		int i = 0;
+		while (i < text.length()) {
+			if (!isToken(text.charAt(i))) {
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < text.length() && isToken(text.charAt(i))) {
+				i++;
+			}
+			pieces.add(new Piece(toLowerCase(text.substring(start, i)), start == 0, i == text.length()));
+		}
+		Collections.sort(pieces);
+
+		BitSet lines = null;
+		for (Piece piece : pieces) {
+			if (lines != null && (lines.isEmpty() || (piece.isOpen() && piece.token.length() < MIN_OPEN_LENGTH))) {
+				break;
+			}
+			BitSet found = find(piece.token, piece.openStart, piece.openEnd);
+			if (found != null) {
+				if (lines == null) {
+					lines = found;
+				} else {
+					lines.and(found);
+				}
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * A token of a searched text.
+	 */
+	private static class Piece implements Comparable<Piece> {
+		String token;
+		boolean openStart, openEnd;
+
+		Piece(String token, boolean openStart, boolean openEnd) {
+			this.token = token;
+			this.openStart = openStart;
+			this.openEnd = openEnd;
+		}
+
+		boolean isOpen() {
+			return openStart || openEnd;
+		}
+
+		@Override
+		public int compareTo(Piece other) {
+			if (isOpen() != other.isOpen()) {
+				return isOpen() ? 1 : -1;
+			}
+			return other.token.length() - token.length();
+		}
+	}
+
+	/**
+	 * Find the lines of the tokens that contain a text.
+	 * @param token : a sequence of token characters, in lower case
+	 * @param openStart : the token of the line can have more characters before the text
+	 * @param openEnd : the token of the line can have more characters after the text
+	 * @return the lines, or null if the token is too long to be searched
+	 */
+	private BitSet find(String token, boolean openStart, boolean openEnd) {
+		int length = token.getBytes(charset).length;
+		if (length > MAX_TOKEN_LENGTH) {
+			return null;
+		}
+		BitSet lines = new BitSet();
+		LiteralMatcher matcher = new LiteralMatcher(token, charset, false);
+		ByteBuffer buffer = ByteBuffer.wrap(dictionary);
+
+		int pos = matcher.indexOf(buffer, 0, dictionary.length);
+		while (pos != -1) {
+			int id = Arrays.binarySearch(tokenStarts, pos);
+			if (id < 0) {
+				id = -id - 2;
+			}
+			boolean atStart = pos == tokenStarts[id];
+			boolean atEnd = pos + length == tokenStarts[id + 1] - 1;
+			if ((openStart || atStart) && (openEnd || atEnd)) {
+				addLines(id, lines);
+				// Next token:
+				pos = matcher.indexOf(buffer, tokenStarts[id + 1], dictionary.length);
+			} else {
+				// The text can be again in the same token (eg: the end of "error" for "r"):
+				pos = matcher.indexOf(buffer, pos + 1, dictionary.length);
+			}
+		}
+
+		// The end of the truncated tokens is unknown:
+		if (openStart) {
+			for (int id : truncated) {
+				addLines(id, lines);
+			}
+		}
+		return lines;
+	}
+
+	private void addLines(int id, BitSet lines) {
+		int line = -1;
+		int pos = postingStarts[id];
+		int end = postingStarts[id + 1];
+		while (pos < end) {
+			// Variable length integer:
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = postings[pos++];
+				delta |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			line += delta;
+			lines.set(line);
+		}
+	}
+
+	private static String toLowerCase(String token) {
+		char[] chars = token.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] >= 'A' && chars[i] <= 'Z') {
+				chars[i] += 'a' - 'A';
+			}
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return the number of lines of the file
+	 */
+	public int getLineCount() {
+		return lineStarts.length - 1;
+	}
+
+	/**
+	 * @param line : 0 based
+	 * @return the position of the start of a line in the file (uncompressed)
+	 */
+	public long getStart(int line) {
+		return lineStarts[line];
+	}
+
+	/**
+	 * @param line : 0 based
+	 * @return the position of the end of a line in the file (uncompressed), after its line break
+	 */
+	public long getEnd(int line) {
+		return lineStarts[line + 1];
+	}
+
+	// Storage --------------------------------------
+
+	/**
+	 * Write the index. The lengths of the lines, tokens and postings are written as variable length integers.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+		int lines = getLineCount();
+		int tokens = tokenStarts.length - 1;
+
+		VarIntWriter lengths = new VarIntWriter(lines + tokens + truncated.length);
+		for (int i = 0; i < lines; i++) {
+			lengths.write(lineStarts[i + 1] - lineStarts[i]);
+		}
+		for (int id : truncated) {
+			lengths.write(id);
+		}
+		for (int i = 0; i < tokens; i++) {
+			lengths.write(postingStarts[i + 1] - postingStarts[i]);
+		}
+
+		out.writeInt(lines);
+		out.writeInt(tokens);
+		out.writeInt(truncated.length);
+		out.writeInt(lengths.length);
+		out.write(lengths.bytes, 0, lengths.length);
+		out.writeInt(dictionary.length);
+		out.write(dictionary);
+		out.writeInt(postings.length);
+		out.write(postings);
+	}
+
+	/**
+	 * Read an index written with write().
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static TokenIndex read(DataInput in) throws IOException {
+		int lines = in.readInt();
+		int tokens = in.readInt();
+		int[] truncated = new int[in.readInt()];
+		byte[] lengths = new byte[in.readInt()];
+		in.readFully(lengths);
+		byte[] dictionary = new byte[in.readInt()];
+		in.readFully(dictionary);
+		byte[] postings = new byte[in.readInt()];
+		in.readFully(postings);
+
+		int[] pos = new int[1];
+		long[] lineStarts = new long[lines + 1];
+		for (int i = 0; i < lines; i++) {
+			lineStarts[i + 1] = lineStarts[i] + readVarLong(lengths, pos);
+		}
+		for (int i = 0; i < truncated.length; i++) {
+			truncated[i] = (int) readVarLong(lengths, pos);
+		}
+		int[] postingStarts = new int[tokens + 1];
+		for (int i = 0; i < tokens; i++) {
+			postingStarts[i + 1] = postingStarts[i] + (int) readVarLong(lengths, pos);
+		}
+
+		// Every token ends with a separator:
+		int[] tokenStarts = new int[tokens + 1];
+		for (int i = 0, id = 1; id < tokens; i++) {
+			if (dictionary[i] == SEPARATOR) {
+				tokenStarts[id++] = i + 1;
+			}
+		}
+		tokenStarts[tokens] = dictionary.length;
+
+		return new TokenIndex(lineStarts, dictionary, tokenStarts, truncated, postings, postingStarts);
+	}
+
+	private static long readVarLong(byte[] bytes, int[] pos) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[pos[0]++];
+			value |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	/**
+	 * Variable length integers written in an array.
+	 */
+	private static class VarIntWriter {
+		byte[] bytes;
+		int length;
+
+		VarIntWriter(int count) {
+			bytes = new byte[Math.max(16, count * 2)];
+		}
+
+		void write(long value) {
+			if (length + 10 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			while ((value & ~0x7fL) != 0) {
+				bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package logbrowser.app.search;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Build the TokenIndex of a file, while the file is read.
+ *
+ * The content is received in buffers of complete lines (see add()), in the order of the file, so a token is never
+ * split between two buffers. The tokens are kept in a hash table of bytes, without creating Strings; the lines
+ * of every token are encoded while they are found (most of the tokens of a log appear in a single line,
+ * so their line is kept apart until they are found in a second line).
+ * The memory used by the builder is limited: when it exceeds the maximum (see isFull()), the file can't be indexed.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class TokenIndexBuilder {
+
+	private static final byte LF = '\n';
+	static final byte[] LOWER = new byte[256];
+	static {
+		for (int b = 0; b < 256; b++) {
+			LOWER[b] = (byte) (b >= 'A' && b <= 'Z' ? b + 'a' - 'A' : b);
+		}
+	}
+
+	// Lines:
+	private long position;
+	private long[] lineStarts = new long[1024];
+	private int lines;
+
+	// Tokens: bytes in the dictionary (with their separator), hash, last line, and lines after the first one:
+	private byte[] dictionary = new byte[64 * 1024];
+	private int dictionaryLength;
+	private int[] tokenStarts = new int[1024];
+	private int[] hashes = new int[1024];
+	private int[] lastLines = new int[1024];
+	private byte[][] postings = new byte[1024][];
+	private int[] postingLengths = new int[1024];
+	private int tokens;
+	private int truncatedCount;
+	private int[] truncated = new int[16];
+
+	// Hash table of the tokens: hash and id + 1 of every slot (0 if empty), together in the same array
+	private int[] table = new int[2 * 4096];
+
+	// Memory:
+	private long maxSize;
+	private long postingsSize;
+
+	/**
+	 * Constructor
+	 * @param maxSize : max. memory used by the builder in bytes
+	 */
+	public TokenIndexBuilder(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return if the memory used by the builder exceeds its maximum (the rest of the lines must not be added)
+	 */
+	public boolean isFull() {
+		return getMemorySize() > maxSize;
+	}
+
+	/**
+	 * @return an estimation of the memory used by the builder, in bytes
+	 */
+	long getMemorySize() {
+		return 8L * lineStarts.length + dictionary.length + 4L * (4 * tokenStarts.length + table.length + truncated.length) +
+			   8L * postings.length + postingsSize;
+	}
+
+	/**
+	 * Add the lines of a buffer.
+	 * @param buffer : complete lines, unless it is the end of the file
+	 * @param limit : the end of the lines in the buffer
+	 */
+	public void add(ByteBuffer buffer, int limit) {
+		int i = 0;
+		while (i < limit) {
+			byte b = buffer.get(i);
+			if (b == LF) {
+				addLine(position + i + 1);
+				i++;
+				continue;
+			}
+			if (!TokenIndex.isToken(b)) {
+				i++;
+				continue;
+			}
+
+			// A token (only the first MAX_TOKEN_LENGTH bytes are kept):
+			int start = i;
+			int hash = 0;
+			while (i < limit && TokenIndex.isToken(b = buffer.get(i))) {
+				if (i - start < TokenIndex.MAX_TOKEN_LENGTH) {
+					hash = 31 * hash + LOWER[b & 0xff];
+				}
+				i++;
+			}
+			int length = Math.min(i - start, TokenIndex.MAX_TOKEN_LENGTH);
+			boolean isTruncated = i - start > TokenIndex.MAX_TOKEN_LENGTH;
+			addToken(buffer, start, length, isTruncated ? ~hash : hash, isTruncated);
+		}
+		position += limit;
+	}
+
+	/**
+	 * @return the index of the lines added
+	 */
+	public TokenIndex build() {
+		// The last line may not have a line break:
+		if (position > lineStarts[lines]) {
+			addLine(position);
+		}
+
+		// Lines of every token:
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		int[] postingStarts = new int[tokens + 1];
+		for (int id = 0; id < tokens; id++) {
+			postingStarts[id] = all.size();
+			if (postings[id] == null) {
+				// A single line (relative to line -1):
+				addPosting(id, lastLines[id] + 1);
+			}
+			all.write(postings[id], 0, postingLengths[id]);
+		}
+		postingStarts[tokens] = all.size();
+
+		int[] starts = Arrays.copyOf(tokenStarts, tokens + 1);
+		starts[tokens] = dictionaryLength;
+		return new TokenIndex(Arrays.copyOf(lineStarts, lines + 1), Arrays.copyOf(dictionary, dictionaryLength), starts,
+							  Arrays.copyOf(truncated, truncatedCount), all.toByteArray(), postingStarts);
+	}
+
+	private void addLine(long end) {
+		if (lines + 1 == lineStarts.length) {
+			lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+		}
+		lineStarts[++lines] = end;
+	}
+
+	private void addToken(ByteBuffer buffer, int start, int length, int hash, boolean isTruncated) {
+		int mask = table.length / 2 - 1;
+		int slot = mix(hash) & mask;
+		int id;
+		while ((id = table[2 * slot + 1] - 1) != -1) {
+			if (table[2 * slot] == hash && equals(id, buffer, start, length)) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (id == -1) {
+			id = newToken(buffer, start, length, hash);
+			table[2 * slot] = hash;
+			table[2 * slot + 1] = id + 1;
+			if (isTruncated) {
+				if (truncatedCount == truncated.length) {
+					truncated = Arrays.copyOf(truncated, truncatedCount * 2);
+				}
+				truncated[truncatedCount++] = id;
+			}
+			if (tokens * 2 > table.length / 2) {
+				rehash();
+			}
+		}
+
+		// Once per line (the first line is only kept in lastLines until there is a second one):
+		if (lastLines[id] != lines) {
+			if (lastLines[id] != -1) {
+				if (postings[id] == null) {
+					addPosting(id, lastLines[id] + 1);
+				}
+				addPosting(id, lines - lastLines[id]);
+			}
+			lastLines[id] = lines;
+		}
+	}
+
+	private boolean equals(int id, ByteBuffer buffer, int start, int length) {
+		int tokenStart = tokenStarts[id];
+		int tokenLength = (id + 1 < tokens ? tokenStarts[id + 1] : dictionaryLength) - tokenStart - 1;
+		if (tokenLength != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (dictionary[tokenStart + i] != LOWER[buffer.get(start + i) & 0xff]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int newToken(ByteBuffer buffer, int start, int length, int hash) {
+		if (tokens == tokenStarts.length) {
+			int capacity = tokens * 2;
+			tokenStarts = Arrays.copyOf(tokenStarts, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+			lastLines = Arrays.copyOf(lastLines, capacity);
+			postings = Arrays.copyOf(postings, capacity);
+			postingLengths = Arrays.copyOf(postingLengths, capacity);
+		}
+		if (dictionaryLength + length + 1 > dictionary.length) {
+			dictionary = Arrays.copyOf(dictionary, Math.max(dictionary.length * 2, dictionaryLength + length + 1));
+		}
+		int id = tokens++;
+		tokenStarts[id] = dictionaryLength;
+		for (int i = 0; i < length; i++) {
+			dictionary[dictionaryLength++] = LOWER[buffer.get(start + i) & 0xff];
+		}
+		dictionary[dictionaryLength++] = TokenIndex.SEPARATOR;
+		hashes[id] = hash;
+		lastLines[id] = -1;
+		return id;
+	}
+
+	private void addPosting(int id, int delta) {
+		byte[] bytes = postings[id];
+		int length = postingLengths[id];
+		if (bytes == null) {
+			bytes = new byte[5];
+			postingsSize += 16 + bytes.length;
+		} else if (length + 5 > bytes.length) {
+			postingsSize += bytes.length;
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		}
+		// Variable length integer:
+		while ((delta & ~0x7f) != 0) {
+			bytes[length++] = (byte) ((delta & 0x7f) | 0x80);
+			delta >>>= 7;
+		}
+		bytes[length++] = (byte) delta;
+		postings[id] = bytes;
+		postingLengths[id] = length;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length / 2 - 1;
+		for (int id = 0; id < tokens; id++) {
+			int slot = mix(hashes[id]) & mask;
+			while (table[2 * slot + 1] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[2 * slot] = hashes[id];
+			table[2 * slot + 1] = id + 1;
+		}
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,111 @@
+package logbrowser.app.search;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Bloom filter of the trigrams (sequences of 3 bytes) of the lines of a file.
+ *
+ * The bytes are in lower case (only A-Z), so the filter is valid for searches that ignore the case of ASCII letters.
+ * If any trigram of a text is not in the filter, the text is not in the file, and the file doesn't need to be read
+ * (see Query.mayMatch()); if all the trigrams are in the filter, the text may be in the file.
+ * The filter is much smaller than the file (BITS_PER_TRIGRAM bits for every different trigram of the file).
+ * See TrigramFilterBuilder.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class TrigramFilter {
+
+	static final int BITS_PER_TRIGRAM = 8;
+	static final int HASHES = 3;
+
+	private long[] bits;
+	private int mask;
+
+	TrigramFilter(long[] bits) {
+		this.bits = bits;
+		this.mask = bits.length * 64 - 1;
+	}
+
+	/**
+	 * Check if a text may be in a line of the file.
+	 * @param text
+	 * @return false if the text is not in the file; true if it may be (or if it is too short to know it)
+	 */
+	public boolean mayContain(String text) {
+		byte[] bytes = text.getBytes(Charset.defaultCharset());
+		int trigram = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			trigram = (trigram << 8 | TokenIndexBuilder.LOWER[bytes[i] & 0xff]) & 0xffffff;
+			if (i >= 2 && !contains(trigram)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean contains(int trigram) {
+		int hash = trigram;
+		for (int i = 0; i < HASHES; i++) {
+			hash = mix(hash);
+			int bit = hash & mask;
+			if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Add a trigram to the bits of a filter.
+	 */
+	static void add(long[] bits, int trigram) {
+		int mask = bits.length * 64 - 1;
+		int hash = trigram;
+		for (int i = 0; i < HASHES; i++) {
+			hash = mix(hash);
+			int bit = hash & mask;
+			bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 15);
+	}
+
+	// Storage --------------------------------------
+
+	/**
+	 * Write the filter.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(bits.length);
+		for (long word : bits) {
+			out.writeLong(word);
+		}
+	}
+
+	/**
+	 * Read a filter written with write().
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static TrigramFilter read(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length <= 0 || Integer.bitCount(length) != 1) {
+			throw new IOException("Invalid filter length: " + length);
+		}
+		long[] bits = new long[length];
+		for (int i = 0; i < length; i++) {
+			bits[i] = in.readLong();
+		}
+		return new TrigramFilter(bits);
+	}
+}
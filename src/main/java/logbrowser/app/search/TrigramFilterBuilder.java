@@ -0,0 +1,80 @@
+package logbrowser.app.search;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Build the TrigramFilter of a file, while the file is read.
+ *
+ * The content is received in buffers, in the order of the file (see add()); the buffers don't need to end
+ * at a line break. The trigrams found are kept in a set of all the possible trigrams (2 MB), and the filter
+ * is sized for the number of different trigrams when it is built.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class TrigramFilterBuilder {
+
+	private static final byte LF = '\n';
+
+	private long[] trigrams = new long[(1 << 24) / 64];
+
+	// Last bytes of the current line, and how many bytes are needed for a complete trigram:
+	private int trigram;
+	private int pending = 2;
+
+	/**
+	 * Add the bytes of a buffer.
+	 * @param buffer
+	 * @param limit : the end of the bytes in the buffer
+	 */
+	public void add(ByteBuffer buffer, int limit) {
+		for (int i = 0; i < limit; i++) {
+			add(buffer.get(i));
+		}
+	}
+
+	/**
+	 * Add the bytes of an array.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 */
+	public void add(byte[] bytes, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			add(bytes[i]);
+		}
+	}
+
+	private void add(byte b) {
+		if (b == LF) {
+			// The trigrams don't cross lines:
+			pending = 2;
+			return;
+		}
+		trigram = (trigram << 8 | TokenIndexBuilder.LOWER[b & 0xff]) & 0xffffff;
+		if (pending > 0) {
+			pending--;
+		} else {
+			trigrams[trigram >>> 6] |= 1L << trigram;
+		}
+	}
+
+	/**
+	 * @return the filter of the bytes added
+	 */
+	public TrigramFilter build() {
+		int count = 0;
+		for (long word : trigrams) {
+			count += Long.bitCount(word);
+		}
+		// A power of 2 of at least BITS_PER_TRIGRAM bits for every trigram:
+		int words = Integer.highestOneBit(Math.max(1, count * TrigramFilter.BITS_PER_TRIGRAM / 64 - 1)) * 2;
+		long[] bits = new long[words];
+		for (int i = 0; i < trigrams.length; i++) {
+			for (long word = trigrams[i]; word != 0; word &= word - 1) {
+				TrigramFilter.add(bits, i * 64 + Long.numberOfTrailingZeros(word));
+			}
+		}
+		return new TrigramFilter(bits);
+	}
+}
@@ -19,6 +19,18 @@ public class Config {
 	private String dateFormat;
 	private String downloadBaseFolder;
 	private String downloadExtension;
+	private boolean downloadCompressed;
+	private boolean downloadZip;
+	private int searchThreads;
+	private int searchThreadsPerHost;
+	private int searchMaxLinesPerFile;
+	private int searchMaxLines;
+	private String cacheFolder;
+	private long cacheMaxSize;
+	private String indexFolder;
+	private long indexMaxSize;
+	private long contentCacheMaxSize;
+	private long contentCacheMaxDiskSize;
 	private List<AppConfig> apps;
 
 	public String getDateFormat() {
@@ -48,6 +60,114 @@ public void setDownloadExtension(String downloadExtension) {
 		this.downloadExtension = downloadExtension;
 	}
 
+	public boolean isDownloadCompressed() {
+		return downloadCompressed;
+	}
+
+	@XmlElement(name="downloadCompressed")
+	public void setDownloadCompressed(boolean downloadCompressed) {
+		this.downloadCompressed = downloadCompressed;
+	}
+
+	public boolean isDownloadZip() {
+		return downloadZip;
+	}
+
+	@XmlElement(name="downloadZip")
+	public void setDownloadZip(boolean downloadZip) {
+		this.downloadZip = downloadZip;
+	}
+
+	public int getSearchThreads() {
+		return searchThreads;
+	}
+
+	@XmlElement(name="searchThreads")
+	public void setSearchThreads(int searchThreads) {
+		this.searchThreads = searchThreads;
+	}
+
+	public int getSearchThreadsPerHost() {
+		return searchThreadsPerHost;
+	}
+
+	@XmlElement(name="searchThreadsPerHost")
+	public void setSearchThreadsPerHost(int searchThreadsPerHost) {
+		this.searchThreadsPerHost = searchThreadsPerHost;
+	}
+
+	public int getSearchMaxLinesPerFile() {
+		return searchMaxLinesPerFile;
+	}
+
+	@XmlElement(name="searchMaxLinesPerFile")
+	public void setSearchMaxLinesPerFile(int searchMaxLinesPerFile) {
+		this.searchMaxLinesPerFile = searchMaxLinesPerFile;
+	}
+
+	public int getSearchMaxLines() {
+		return searchMaxLines;
+	}
+
+	@XmlElement(name="searchMaxLines")
+	public void setSearchMaxLines(int searchMaxLines) {
+		this.searchMaxLines = searchMaxLines;
+	}
+
+	public String getCacheFolder() {
+		return cacheFolder;
+	}
+
+	@XmlElement(name="cacheFolder")
+	public void setCacheFolder(String cacheFolder) {
+		this.cacheFolder = cacheFolder;
+	}
+
+	public long getCacheMaxSize() {
+		return cacheMaxSize;
+	}
+
+	@XmlElement(name="cacheMaxSize")
+	public void setCacheMaxSize(long cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+
+	public String getIndexFolder() {
+		return indexFolder;
+	}
+
+	@XmlElement(name="indexFolder")
+	public void setIndexFolder(String indexFolder) {
+		this.indexFolder = indexFolder;
+	}
+
+	public long getIndexMaxSize() {
+		return indexMaxSize;
+	}
+
+	@XmlElement(name="indexMaxSize")
+	public void setIndexMaxSize(long indexMaxSize) {
+		this.indexMaxSize = indexMaxSize;
+	}
+
+	public long getContentCacheMaxSize() {
+		return contentCacheMaxSize;
+	}
+
+	@XmlElement(name="contentCacheMaxSize")
+	public void setContentCacheMaxSize(long contentCacheMaxSize) {
+		this.contentCacheMaxSize = contentCacheMaxSize;
+	}
+
+	public long getContentCacheMaxDiskSize() {
+		return contentCacheMaxDiskSize;
+	}
+
+	@XmlElement(name="contentCacheMaxDiskSize")
+	public void setContentCacheMaxDiskSize(long contentCacheMaxDiskSize) {
+		this.contentCacheMaxDiskSize = contentCacheMaxDiskSize;
+	}
+
 	public List<AppConfig> getApps() {
 		return apps;
 	}
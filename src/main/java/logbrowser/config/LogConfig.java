@@ -4,6 +4,7 @@
 
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlList;
 import javax.xml.bind.annotation.XmlRootElement;
 
 /**
@@ -16,7 +17,9 @@
  * 		user="user" 
  * 		pwd="pwd"  
  *		basedir="/common/logs/" 
- *		canBeCompressed="GZ"
+ *		canBeCompressed="GZ ZST"
+ *		timestampFormat="yyyy-MM-dd HH:mm:ss,SSS"
+ *		remoteGrep="true"
  * 
  * @author rodriag
  * @since 1.0
@@ -30,10 +33,13 @@ public class LogConfig {
 	public enum Type {HTTP, HTTPS, SSH, LOCAL};
 	
 	/**
-	 * The implemented types of compression.
+	 * The implemented types of compression, with the extension of the compressed files.
 	 */
 	public enum Compression {
-		GZ(".gz");
+		GZ(".gz"),
+		BZ2(".bz2"),
+		LZ4(".lz4"),
+		ZST(".zst");
 		
 		private String fileName;
 		Compression(String fileName) {
@@ -50,7 +56,9 @@ public String getFileName() {
 	private String user;
 	private String pwd;
 	private String basedir;
-	private Compression canBeCompressed;
+	private List<Compression> canBeCompressed;
+	private String timestampFormat;
+	private boolean remoteGrep;
 	private List<String> files;
 
 	public Type getType() {
@@ -107,15 +115,43 @@ public void setPwd(String pwd) {
 		this.pwd = pwd;
 	}
 
-	public Compression getCanBeCompressed() {
+	/**
+	 * @return the types of compression of the files, in the order they are looked for (null if never compressed)
+	 */
+	public List<Compression> getCanBeCompressed() {
 		return canBeCompressed;
 	}
 
 	@XmlAttribute
-	public void setCanBeCompressed(Compression canBeCompressed) {
+	@XmlList
+	public void setCanBeCompressed(List<Compression> canBeCompressed) {
 		this.canBeCompressed = canBeCompressed;
 	}
 
+	/**
+	 * @return the format of the timestamp at the start of the lines (see SimpleDateFormat), or null if unknown
+	 */
+	public String getTimestampFormat() {
+		return timestampFormat;
+	}
+
+	@XmlAttribute
+	public void setTimestampFormat(String timestampFormat) {
+		this.timestampFormat = timestampFormat;
+	}
+
+	/**
+	 * @return true if the SSH files are searched with grep in the host (see ReadFileSsh)
+	 */
+	public boolean isRemoteGrep() {
+		return remoteGrep;
+	}
+
+	@XmlAttribute
+	public void setRemoteGrep(boolean remoteGrep) {
+		this.remoteGrep = remoteGrep;
+	}
+
 	public List<String> getFiles() {
 		return files;
 	}
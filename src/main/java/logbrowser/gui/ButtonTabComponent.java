@@ -61,14 +61,20 @@ class ButtonTabComponent extends JPanel {
 	private static final long serialVersionUID = 1L;
 
 	private final JTabbedPane pane;
+	private final Runnable closeAction;
 
-	public ButtonTabComponent(final JTabbedPane pane) {
+	/**
+	 * @param pane
+	 * @param closeAction : releases the content of the tab when it is closed (can be null)
+	 */
+	public ButtonTabComponent(final JTabbedPane pane, Runnable closeAction) {
 		// unset default FlowLayout' gaps
 		super(new FlowLayout(FlowLayout.LEFT, 0, 0));
 		if (pane == null) {
 			throw new NullPointerException("TabbedPane is null");
 		}
 		this.pane = pane;
+		this.closeAction = closeAction;
 		setOpaque(false);
 
 		// make JLabel read titles from JTabbedPane
@@ -121,6 +127,9 @@ public void actionPerformed(ActionEvent e) {
 			int i = pane.indexOfTabComponent(ButtonTabComponent.this);
 			if (i != -1) {
 				pane.remove(i);
+				if (closeAction != null) {
+					closeAction.run();
+				}
 			}
 		}
 
@@ -1,34 +1,42 @@
 package logbrowser.gui;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.NavigableMap;
 
 import logbrowser.app.LogBrowserException;
 
 /**
  * Common interface for ResultsTable and FileTable:
- *   The content is a List of Strings
- * 
+ *   Every row shows a line of the logs (or a header), converted to HTML when it is shown.
+ *   The highlighted lines are kept apart, already converted to HTML (see getHighlights()).
+ *
  * @author rodriag
  * @since 1.0
  */
 interface ContentTable {
-	
+
 	/**
-	 * Return the content of the table.
+	 * Return the number of rows of the table.
 	 * @return
+	 */
+	public int getRowCount();
+
+	/**
+	 * Return the text of a line of the log, as it is in the file (without HTML).
+	 * @param index
+	 * @return the text, or null if the row is not a line of the log
 	 * @throws LogBrowserException
 	 * @throws IOException
 	 */
-	public List<String> getContent() throws LogBrowserException, IOException;
-	
+	public String getText(int index) throws LogBrowserException, IOException;
+
 	/**
-	 * Update a line in the table.
-	 * @param index
-	 * @param content
+	 * Return the highlighted lines: the text of the line converted to HTML, with the highlights, by row.
+	 * The map can be modified; the rows that are not in the map are shown without highlights.
+	 * @return
 	 */
-	public void updateLine(int index, String content);
-	
+	public NavigableMap<Integer, String> getHighlights();
+
 	/**
 	 * Fire content changed event.
 	 */
@@ -6,6 +6,8 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
@@ -14,8 +16,8 @@
 
 import org.apache.commons.lang.StringEscapeUtils;
 
-import logbrowser.app.LogBrowserException;
 import logbrowser.app.LogLine;
+import logbrowser.app.fileread.Lines;
 
 /**
  * JTable for the opened files
@@ -47,12 +49,13 @@ class FileTable extends JTable implements ContentTable {
 
 	/**
 	 * Set the content of the file in the JTable.
+	 * The lines are read when they are shown, so the width of the table is estimated from a sample of lines.
 	 * @param content
 	 * @return
 	 * @throws IOException
 	 */
-	int setContent(List<LogLine> content) throws IOException {
-		// Set the content in the model, calculate max width (adding 20% extra space):
+	int setContent(Lines content) throws IOException {
+		// Set the content in the model, estimate max width (adding 20% extra space):
 		maxLineWidth = (int)(fileModel.setLines(content) * 1.2);
 		
 		// Resize the table:
@@ -63,6 +66,14 @@ int setContent(List<LogLine> content) throws IOException {
 		return content.size();
 	}
 	
+	/**
+	 * Release the content of the file (see Lines.close()), when the table is no longer shown.
+	 * @throws IOException
+	 */
+	void close() throws IOException {
+		fileModel.close();
+	}
+
 	/**
 	 * Go to the specified row
 	 */
@@ -81,12 +92,12 @@ public void selectRow(int lineNumber) {
 
 	// ContentTable implementation ------------------------------------------------
 	
-	public List<String> getContent() throws LogBrowserException, IOException {
-		return fileModel.getLines();
+	public String getText(int index) {
+		return fileModel.getLines().get(index).getText();
 	}
-	
-	public void updateLine(int index, String text) {
-		fileModel.updateLine(index, text);
+
+	public NavigableMap<Integer, String> getHighlights() {
+		return fileModel.getHighlights();
 	}
 	
 	public void fireTableDataChanged() {
@@ -101,44 +112,68 @@ public void showLine(int lineNumber) {
 
 /******************************************************************
  * File data model
+ * The rows are converted to HTML when they are shown, reading the lines from the file (see Lines).
  */
 class FileTableModel extends AbstractTableModel {
 	private static final long serialVersionUID = 1L;
 
-	private List<String> lines;
+	// Number of lines measured to estimate the width of the table:
+	private static final int SAMPLE_SIZE = 1000;
+
+	private List<LogLine> lines;
+	private NavigableMap<Integer, String> highlights;
 	private LogBrowserWindow frame;
 	
 	FileTableModel(LogBrowserWindow frame) {
 		this.frame = frame;
 		lines = new ArrayList<>();
+		highlights = new TreeMap<>();
 	}
 	
 	/**
 	 * Set the content of the file in the datamodel
-	 * Also: calculate and return the length of the longest line
+	 * Also: estimate and return the length of the longest line, from the width of a sample of lines
 	 * @param lines
 	 * @return
 	 */
-	int setLines(List<LogLine> logLines) {
-
-		int maxLineWidth = 0;
-		for (LogLine logLine : logLines) {
-			String text = "<code>" + StringEscapeUtils.escapeHtml(logLine.getText()) + "</code>";
-			
-			int size = frame.metrics.stringWidth(text);
-			maxLineWidth = Math.max(size, maxLineWidth);
+	int setLines(Lines lines) {
+		this.lines = lines;
+		this.highlights.clear();
 
-			this.lines.add(text);
+		int size = lines.size();
+		if (size == 0) {
+			return 0;
 		}
-		return maxLineWidth;
+		long chars = 0;
+		long width = 0;
+		// (the first lines, that are read together)
+		for (int i = 0; i < Math.min(size, SAMPLE_SIZE); i++) {
+			String text = lines.get(i).getText();
+			chars += text.length();
+			width += frame.metrics.stringWidth(text);
+		}
+		double charWidth = chars == 0 ? frame.metrics.charWidth('0') : (double) width / chars;
+		return frame.metrics.stringWidth(String.format("%05d ", size)) + (int)(charWidth * lines.getMaxLength());
 	}
 
-	List<String> getLines() {
+	List<LogLine> getLines() {
 		return lines;
 	}
+
+	/**
+	 * Release the lines of the file.
+	 * @throws IOException
+	 */
+	void close() throws IOException {
+		if (lines instanceof Lines) {
+			((Lines) lines).close();
+		}
+		lines = new ArrayList<>();
+		highlights.clear();
+	}
 	
-	void updateLine(int index, String text) {
-		this.lines.set(index, text);
+	NavigableMap<Integer, String> getHighlights() {
+		return highlights;
 	}
 	
 	// AbstractTableModel implementation -----------------------------------------
@@ -155,9 +190,13 @@ public int getColumnCount() {
 
 	@Override
 	public Object getValueAt(int rowIndex, int columnIndex) {
+		String html = highlights.get(rowIndex);
+		if (html == null) {
+			html = StringEscapeUtils.escapeHtml(lines.get(rowIndex).getText());
+		}
 		// Note rowIndex + 1: lines are numbered starting in 1:
 		return "<span style=\"color:red\">" + String.format("%05d", rowIndex + 1) + "</span> " +
-			   lines.get(rowIndex);
+			   "<code>" + html + "</code>";
 	}
 
     @Override
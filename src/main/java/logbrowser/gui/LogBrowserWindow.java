@@ -14,9 +14,14 @@
 import java.awt.event.MouseListener;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -30,11 +35,17 @@
 
 import com.jcraft.jsch.JSchException;
 
+import logbrowser.app.DownloadListener;
 import logbrowser.app.FolderExistsException;
 import logbrowser.app.InfoLine;
 import logbrowser.app.LogBrowser;
 import logbrowser.app.LogBrowserException;
 import logbrowser.app.LogFile;
+import logbrowser.app.SearchListener;
+import logbrowser.app.fileread.FileInfo;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.SearchLimits;
+import logbrowser.app.search.TimeWindow;
 import net.sourceforge.jdatepicker.impl.JDatePanelImpl;
 import net.sourceforge.jdatepicker.impl.JDatePickerImpl;
 import net.sourceforge.jdatepicker.impl.UtilDateModel;
@@ -55,21 +66,26 @@ public class LogBrowserWindow extends JFrame implements ActionListener, ChangeLi
 	private static final double SCREEN_SIZE_RATIO = 4.0 / 5.0;
 	private static final int MESSAGES_HEIGHT = 64;
 	private static final int SCROLL_INCREMENT = 16;
+	private static final int PROGRESS_DELAY = 500;
 
 	// Action events:
 	private static final String PREV = "prev";
 	private static final String NEXT = "next";
 	private static final String SEARCH = "search";
+	private static final String CANCEL = "cancel";
 	private static final String DOWNLOAD = "download";
 	private static final String SEARCH_FILE = "searchFile";
 
 	// GUI components:
 	private JComboBox<String> appCombo;
 	private JTextField textToSearch;
+	private JTextField fromTime, toTime;
+	private JCheckBox ignoreCase, firstLines, countOnly;
 	private UtilDateModel fromDateModel, toDateModel;
 	private JTabbedPane tabsPanel;
 	private ResultsTable resultsTable;
-	private JButton searchButton, downloadButton, searchFilesButton, prevButton, nextButton;
+	private JButton searchButton, cancelButton, downloadButton, searchFilesButton, prevButton, nextButton;
+	private JLabel progress;
 	private DefaultStyledDocument messages;
     private Style normalStyle, errorStyle;
 	
@@ -77,6 +93,8 @@ public class LogBrowserWindow extends JFrame implements ActionListener, ChangeLi
 	FontMetrics metrics;
 	
 	private LogBrowser logBrowser;
+	private SearchWorker searchWorker;
+	private DownloadWorker downloadWorker;
     
 	public static void main(String[] args) {
 		// Schedule for the event-dispatching thread:
@@ -131,7 +149,16 @@ private JComponent createControlComponent() {
 		// Text to search:
 		controlPanelFirstRow.add(new JLabel("Search text: "));
 		textToSearch = new JTextField("", 30);
+		textToSearch.setToolTipText("Text, \"quoted text\", /regular expression/, combined with AND, OR, NOT and parentheses");
 		controlPanelFirstRow.add(textToSearch);
+		ignoreCase = new JCheckBox("Ignore case");
+		controlPanelFirstRow.add(ignoreCase);
+		firstLines = new JCheckBox("First lines");
+		firstLines.setToolTipText("Stop reading the files when the limit of found lines is reached");
+		controlPanelFirstRow.add(firstLines);
+		countOnly = new JCheckBox("Count only");
+		countOnly.setToolTipText("Only count the found lines of every file");
+		controlPanelFirstRow.add(countOnly);
 
 		// Dates:
 		fromDateModel = new UtilDateModel();
@@ -145,17 +172,37 @@ private JComponent createControlComponent() {
 		controlPanelFirstRow.add(new JDatePickerImpl(new JDatePanelImpl(toDateModel)));
 		toDateModel.addChangeListener(this);
 
+		// Time window:
+		controlPanelFirstRow.add(new JLabel("Time: "));
+		fromTime = new JTextField("", 5);
+		fromTime.setToolTipText("HH:mm (optional): only the lines from this time, in the logs with a timestamp format");
+		controlPanelFirstRow.add(fromTime);
+		controlPanelFirstRow.add(new JLabel(" - "));
+		toTime = new JTextField("", 5);
+		toTime.setToolTipText("HH:mm (optional): only the lines before this time, in the logs with a timestamp format");
+		controlPanelFirstRow.add(toTime);
+
 		// ---- Second row --------
 
 		JPanel controlPanelSecondRow = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
 		controlPanel.add(controlPanelSecondRow);
 
+		// Progress of the search:
+		progress = new JLabel();
+		controlPanelSecondRow.add(progress);
+
 		// Buttons:
 		searchButton = new JButton("Search");
 		searchButton.setActionCommand(SEARCH);
 		searchButton.addActionListener(this);
 		controlPanelSecondRow.add(searchButton);
 
+		cancelButton = new JButton("Cancel");
+		cancelButton.setActionCommand(CANCEL);
+		cancelButton.addActionListener(this);
+		cancelButton.setEnabled(false);
+		controlPanelSecondRow.add(cancelButton);
+
 		downloadButton = new JButton("Download");
 		downloadButton.setActionCommand(DOWNLOAD);
 		downloadButton.addActionListener(this);
@@ -250,80 +297,91 @@ private void loadConfiguration() {
 
 	/**
 	 * ACTIONS: Search.
+	 * The search runs in background (see SearchWorker): the results are added to the table as soon as every file
+	 * has been searched, and the search can be cancelled.
 	 */
 	private void search() {
+		String appName = Objects.requireNonNull(appCombo.getSelectedItem()).toString();
+		String text = textToSearch.getText();
+		Date fromDate = fromDateModel.getValue();
+		Date toDate = toDateModel.getValue();
+		TimeWindow window;
 		try {
-			long t1 = System.currentTimeMillis();
-			actionStarted();
+			window = getTimeWindow();
+		} catch (LogBrowserException e) {
+			showError(e.getMessage());
+			return;
+		}
 
-			String appName = Objects.requireNonNull(appCombo.getSelectedItem()).toString();
-			String text = textToSearch.getText();
-			Date fromDate = fromDateModel.getValue();
-			Date toDate = toDateModel.getValue();
+		// Clear previous results and select the search tab:
+		resultsTable.setResults(new ArrayList<InfoLine>());
+		tabsPanel.setSelectedIndex(0);
 
-			// Search and load results:
-			List<InfoLine> infoLines = logBrowser.search(appName, fromDate, toDate, text);
-			resultsTable.setResults(infoLines);
-			
-			// Select the search tab:
-			tabsPanel.setSelectedIndex(0);
-			
-			long duration = (System.currentTimeMillis() - t1) / 1000;
-			if (!text.isEmpty()) {
-				// Hightlight results (only if a text was searched):
-				SearchUtil.Results results = SearchUtil.highlightText(resultsTable, text);
-				showMessage("Found " + results.totalFound + " results in " + results.linesFound + " lines (" + duration + " seconds)");
-			} else {
-				showMessage("Found " + infoLines.size() + " files (" + duration + " seconds)");
-			}
-			
-		} catch (LogBrowserException e) {
-			showError("Error: " + e.getMessage());
-		} catch (IOException e) {
-			showError("IO Exception: " + e.getMessage());
-		} catch (JSchException e) {
-			showError("JSch Exception: " + e.getMessage());
-		} finally {
-			actionEnded();
+		SearchLimits limits = logBrowser.createLimits(firstLines.isSelected(), countOnly.isSelected());
+		searchWorker = new SearchWorker(appName, fromDate, toDate, text, ignoreCase.isSelected(), window, limits);
+		actionStarted();
+		cancelButton.setEnabled(true);
+		searchWorker.execute();
+	}
+
+	/**
+	 * The time window of the search: from 00:00 or until 24:00 if only one of the times is specified.
+	 * @return the window, or null if no time is specified
+	 * @throws LogBrowserException if a time is not valid
+	 */
+	private TimeWindow getTimeWindow() throws LogBrowserException {
+		String from = fromTime.getText().trim();
+		String to = toTime.getText().trim();
+		if (from.isEmpty() && to.isEmpty()) {
+			return null;
+		}
+		return new TimeWindow(TimeWindow.parseTime(from.isEmpty() ? "00:00" : from),
+							  TimeWindow.parseTime(to.isEmpty() ? "24:00" : to));
+	}
+
+	/**
+	 * ACTIONS: Cancel the running search or download.
+	 * The threads that are reading files are interrupted, and their files closed.
+	 */
+	private void cancel() {
+		if (searchWorker != null && !searchWorker.isDone()) {
+			cancelButton.setEnabled(false);
+			searchWorker.cancel(true);
+		}
+		if (downloadWorker != null && !downloadWorker.isDone()) {
+			cancelButton.setEnabled(false);
+			downloadWorker.cancel(true);
 		}
 	}
 	
 	/**
 	 * ACTIONS: Download the found files to a folder.
+	 * The download runs in background (see DownloadWorker): every file is shown when it has been downloaded,
+	 * and the download can be cancelled (the files that were not complete continue in the next download).
 	 */
 	private void download() {
+		File downloadFolder = null;
 		try {
-			long t1 = System.currentTimeMillis();
-			actionStarted();
-
-			File downloadFolder = null;
-			try {
-				downloadFolder = logBrowser.prepareDownload();
-			} catch(FolderExistsException e) {
-				int anwser = JOptionPane.showConfirmDialog(this, e.getMessage() + ". Overwrite?", 
-						"Confirm folder overwrite", JOptionPane.YES_NO_OPTION);
-				
-				if (anwser == JOptionPane.YES_OPTION) {
-					downloadFolder = e.getFolder();
-				} else {
-					showError("Download cancelled.");
-					return;
-				}
-			}
-			
-			// Download the files:
-			int count = logBrowser.download(downloadFolder, true);
-			
-			long duration = (System.currentTimeMillis() - t1) / 1000;
-			showMessage("Downloaded: " + count + " files to " + downloadFolder.getPath() + ", in " + duration + " seconds.");
+			downloadFolder = logBrowser.prepareDownload();
+		} catch(FolderExistsException e) {
+			int anwser = JOptionPane.showConfirmDialog(this, e.getMessage() + ". Overwrite?", 
+					"Confirm folder overwrite", JOptionPane.YES_NO_OPTION);
 			
+			if (anwser == JOptionPane.YES_OPTION) {
+				downloadFolder = e.getFolder();
+			} else {
+				showError("Download cancelled.");
+				return;
+			}
 		} catch(LogBrowserException e) {
 			showError("Error: " + e.getMessage());
-		} catch(IOException e) {
-			showError("IO Exception: " + e.getMessage());
-		} finally {
-			actionEnded();
+			return;
 		}
+
+		downloadWorker = new DownloadWorker(downloadFolder);
+		actionStarted();
+		cancelButton.setEnabled(true);
+		downloadWorker.execute();
 	}
 	
 	/**
@@ -349,13 +407,20 @@ private void openFile() {
 			scrollPane.getVerticalScrollBar().setUnitIncrement(SCROLL_INCREMENT);
 			tabsPanel.add(logFile.getName(), scrollPane);
 
-			// Set a ButtonTabComponent (that includes a close icon) in place of the added ScrollPane :
+			// Set a ButtonTabComponent (that includes a close icon) in place of the added ScrollPane,
+			// releasing the lines of the file when the tab is closed:
 			int index = tabsPanel.getTabCount() - 1;
-			ButtonTabComponent btc = new ButtonTabComponent(tabsPanel);
+			ButtonTabComponent btc = new ButtonTabComponent(tabsPanel, () -> {
+				try {
+					fileTable.close();
+				} catch (IOException e) {
+					logger.warn("Cannot close {}: {}", logFile.getName(), e.getMessage());
+				}
+			});
 			tabsPanel.setTabComponentAt(index, btc);
 
 			// Read the file and set the content:
-			int lines = fileTable.setContent(logFile.getLogLines());
+			int lines = fileTable.setContent(logFile.getLineIndex());
 			
 			// Go to the selected line in the file:
 			if (lineNumber != null) {
@@ -390,11 +455,15 @@ private void searchFile() {
 			actionStarted();
 			
 			String text = JOptionPane.showInputDialog(this, "Text to search:");
+			if (text == null || text.trim().isEmpty()) {
+				return;
+			}
+			Query query = Query.parse(text, ignoreCase.isSelected());
 			// ... content of the selected panel:
 			JScrollPane scroll = (JScrollPane)tabsPanel.getSelectedComponent();
 			FileTable fileTable = (FileTable)((JPanel)scroll.getViewport().getView()).getComponents()[0];
 
-			SearchUtil.Results results = SearchUtil.highlightText(fileTable, text);
+			SearchUtil.Results results = SearchUtil.highlightText(fileTable, query);
 			// Go to the result:
 			fileTable.showLine(results.firstFoundLine);
 
@@ -432,8 +501,6 @@ private void previous() {
 				
 		} catch(LogBrowserException e) {
 			showError("Error: " + e.getMessage());
-		} catch(IOException e) {
-			showError("IOException: " + e.getMessage());
 		}
 	}
 	
@@ -459,8 +526,6 @@ private void next() {
 				
 		} catch(LogBrowserException e) {
 			showError("Error: " + e.getMessage());
-		} catch(IOException e) {
-			showError("IOException: " + e.getMessage());
 		}
 	}
 
@@ -472,8 +537,11 @@ private void actionStarted() {
 	}
 
 	private void actionEnded() {
-		setButtonsEnabled(true);
-		this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+		// The buttons stay disabled while a search or a download is running (also while a cancelled one ends):
+		if ((searchWorker == null || !searchWorker.isRunning()) && (downloadWorker == null || !downloadWorker.isRunning())) {
+			setButtonsEnabled(true);
+			this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+		}
 	}
 
 	private void setButtonsEnabled(boolean enabled) {
@@ -502,6 +570,303 @@ private void showError(String newMessage) {
 		} catch (BadLocationException e) { e.printStackTrace(); }
 	}
 	
+	// Background search ------------------------------------------
+
+	/**
+	 * Runs a search out of the event-dispatching thread.
+	 * The results of every file are added to the table when they are ready (in the order of the files),
+	 * and the progress is shown periodically.
+	 */
+	/**
+	 * A SwingWorker that is running until its background task has returned. When it is cancelled, done() is called
+	 * at once, but the task may still be running (eg: closing its files), so a new action must not start yet.
+	 */
+	private abstract class ActionWorker<T, V> extends SwingWorker<T, V> {
+		private static final int NEW = 0, STARTED = 1, ENDED = 2;
+
+		// Changed by the task, or by done() when the worker is cancelled before the task starts:
+		private AtomicInteger state = new AtomicInteger(NEW);
+		// Only used in the event-dispatching thread:
+		private boolean running = true;
+
+		/**
+		 * The background task.
+		 */
+		protected abstract T runAction() throws Exception;
+
+		@Override
+		protected final T doInBackground() throws Exception {
+			if (!state.compareAndSet(NEW, STARTED)) {
+				return null;
+			}
+			try {
+				return runAction();
+			} finally {
+				state.set(ENDED);
+				SwingUtilities.invokeLater(this::ended);
+			}
+		}
+
+		/**
+		 * Call it from done(): if the worker was cancelled before its task started, the task won't run.
+		 */
+		protected void checkEnded() {
+			if (state.compareAndSet(NEW, ENDED)) {
+				ended();
+			}
+		}
+
+		private void ended() {
+			running = false;
+			actionEnded();
+		}
+
+		/**
+		 * @return true until the background task has returned (only in the event-dispatching thread)
+		 */
+		boolean isRunning() {
+			return running;
+		}
+	}
+
+	private class SearchWorker extends ActionWorker<List<InfoLine>, List<InfoLine>> implements SearchListener {
+		private String appName;
+		private Date fromDate, toDate;
+		private String text;
+		private boolean ignoreCase;
+		private TimeWindow window;
+		private SearchLimits limits;
+
+		private long start;
+		private SearchUtil.Results results = new SearchUtil.Results();
+		// Lines that match the query (including the ones that are not shown):
+		private int matchingLines;
+		private boolean complete = true;
+		// The compiled query, for highlighting the results:
+		private volatile Query query;
+
+		// Progress, updated by the threads of the search:
+		private AtomicInteger files = new AtomicInteger();
+		private AtomicInteger searchedFiles = new AtomicInteger();
+		private AtomicLong searchedBytes = new AtomicLong();
+		private Timer timer;
+
+		SearchWorker(String appName, Date fromDate, Date toDate, String text, boolean ignoreCase, TimeWindow window,
+					 SearchLimits limits) {
+			this.appName = appName;
+			this.fromDate = fromDate;
+			this.toDate = toDate;
+			this.text = text;
+			this.ignoreCase = ignoreCase;
+			this.window = window;
+			this.limits = limits;
+			this.start = System.currentTimeMillis();
+
+			progress.setText("Searching...");
+			timer = new Timer(PROGRESS_DELAY, e -> showProgress());
+			timer.start();
+		}
+
+		@Override
+		protected List<InfoLine> runAction() throws Exception {
+			return logBrowser.search(appName, fromDate, toDate, text, ignoreCase, window, limits, this);
+		}
+
+		@Override
+		protected void process(List<List<InfoLine>> chunks) {
+			if (isCancelled()) {
+				return;
+			}
+			for (List<InfoLine> infoLines : chunks) {
+				InfoLine header = infoLines.get(0);
+				if (header.getCount() != InfoLine.NO_COUNT) {
+					matchingLines += header.getCount();
+					complete &= header.isComplete();
+				}
+
+				int from = resultsTable.getRowCount();
+				resultsTable.addResults(infoLines);
+
+				// Hightlight the new results (only if a text was searched):
+				if (query != null) {
+					try {
+						SearchUtil.highlightText(resultsTable, query, from, resultsTable.getRowCount(), results);
+					} catch (LogBrowserException | IOException e) {
+						showError("Error: " + e.getMessage());
+					}
+				}
+			}
+		}
+
+		@Override
+		protected void done() {
+			timer.stop();
+			progress.setText("");
+			cancelButton.setEnabled(false);
+			checkEnded();
+
+			long duration = (System.currentTimeMillis() - start) / 1000;
+			try {
+				List<InfoLine> infoLines = get();
+				if (query != null) {
+					String found = matchingLines + (complete ? "" : "+") + " lines";
+					if (limits.isCountOnly()) {
+						showMessage("Found " + found + " (" + duration + " seconds)");
+					} else if (results.linesFound < matchingLines || !complete) {
+						showMessage("Found " + found + ", showing " + results.totalFound + " results in " + results.linesFound + " lines (" + duration + " seconds)");
+					} else {
+						showMessage("Found " + results.totalFound + " results in " + results.linesFound + " lines (" + duration + " seconds)");
+					}
+				} else {
+					showMessage("Found " + infoLines.size() + " files (" + duration + " seconds)");
+				}
+			} catch (CancellationException e) {
+				showError("Search cancelled (" + duration + " seconds)");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof LogBrowserException) {
+					showError("Error: " + cause.getMessage());
+				} else if (cause instanceof IOException) {
+					showError("IO Exception: " + cause.getMessage());
+				} else if (cause instanceof JSchException) {
+					showError("JSch Exception: " + cause.getMessage());
+				} else {
+					showError("Error: " + cause);
+				}
+			}
+		}
+
+		private void showProgress() {
+			long millis = System.currentTimeMillis() - start;
+			long mb = searchedBytes.get() / (1024 * 1024);
+			String message = "Searched " + searchedFiles.get() + "/" + files.get() + " files, " + mb + " MB";
+			if (millis > 0) {
+				message += String.format(" (%.1f MB/s)", mb * 1000.0 / millis);
+			}
+			progress.setText(message);
+		}
+
+		// SearchListener implementation -------------------------------------------
+
+		@Override
+		public void started(Query query) {
+			this.query = query;
+		}
+
+		@Override
+		public void filesFound(int count) {
+			files.addAndGet(count);
+		}
+
+		@Override
+		public void found(List<InfoLine> infoLines) {
+			if (!infoLines.isEmpty()) {
+				publish(infoLines);
+			}
+		}
+
+		@Override
+		public void searched(long size) {
+			searchedFiles.incrementAndGet();
+			if (size != FileInfo.UNKNOWN_SIZE) {
+				searchedBytes.addAndGet(size);
+			}
+		}
+	}
+
+	// Background download ------------------------------------------
+
+	/**
+	 * Runs a download out of the event-dispatching thread.
+	 * Every downloaded file is shown with its throughput, and the progress is shown periodically.
+	 */
+	private class DownloadWorker extends ActionWorker<Integer, String> implements DownloadListener {
+		private File folder;
+		private long start;
+
+		// Progress, updated by the threads of the download:
+		private AtomicInteger downloadedFiles = new AtomicInteger();
+		private AtomicLong downloadedBytes = new AtomicLong();
+		private Timer timer;
+
+		DownloadWorker(File folder) {
+			this.folder = folder;
+			this.start = System.currentTimeMillis();
+
+			progress.setText("Downloading...");
+			timer = new Timer(PROGRESS_DELAY, e -> showProgress());
+			timer.start();
+		}
+
+		@Override
+		protected Integer runAction() throws Exception {
+			return logBrowser.download(folder, true, this);
+		}
+
+		@Override
+		protected void process(List<String> chunks) {
+			for (String message : chunks) {
+				showMessage(message);
+			}
+		}
+
+		@Override
+		protected void done() {
+			timer.stop();
+			progress.setText("");
+			cancelButton.setEnabled(false);
+			checkEnded();
+
+			long millis = System.currentTimeMillis() - start;
+			try {
+				int count = get();
+				showMessage("Downloaded: " + count + " files to " + logBrowser.getDownloadTarget(folder).getPath() + ", " + megabytes(downloadedBytes.get()) +
+							" MB in " + millis / 1000 + " seconds" + throughput(downloadedBytes.get(), millis) + ".");
+			} catch (CancellationException e) {
+				showError("Download cancelled (" + downloadedFiles.get() + " files downloaded)");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof LogBrowserException) {
+					showError("Error: " + cause.getMessage());
+				} else if (cause instanceof IOException) {
+					showError("IO Exception: " + cause.getMessage());
+				} else if (cause instanceof JSchException) {
+					showError("JSch Exception: " + cause.getMessage());
+				} else {
+					showError("Error: " + cause);
+				}
+			}
+		}
+
+		private void showProgress() {
+			long millis = System.currentTimeMillis() - start;
+			progress.setText("Downloaded " + downloadedFiles.get() + " files, " + megabytes(downloadedBytes.get()) + " MB" +
+							 throughput(downloadedBytes.get(), millis));
+		}
+
+		private long megabytes(long bytes) {
+			return bytes / (1024 * 1024);
+		}
+
+		private String throughput(long bytes, long millis) {
+			return millis > 0 ? String.format(" (%.1f MB/s)", bytes * 1000.0 / (1024 * 1024) / millis) : "";
+		}
+
+		// DownloadListener implementation -------------------------------------------
+
+		@Override
+		public void downloaded(String name, long size, long millis) {
+			downloadedFiles.incrementAndGet();
+			downloadedBytes.addAndGet(size);
+			publish("Downloaded " + name + ": " + megabytes(size) + " MB in " + String.format("%.1f", millis / 1000.0) +
+					" seconds" + throughput(size, millis));
+		}
+	}
+
 	// ActionListener implementation ------------------------------------------
 	
 	@Override
@@ -516,6 +881,9 @@ public void actionPerformed(ActionEvent actionEvent) {
 		case SEARCH:
 			search();
 			break;
+		case CANCEL:
+			cancel();
+			break;
 		case DOWNLOAD:
 			download();
 			break;
@@ -2,9 +2,10 @@
 
 import java.awt.Dimension;
 import java.awt.Rectangle;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
@@ -14,8 +15,8 @@
 import org.apache.commons.lang.StringEscapeUtils;
 
 import logbrowser.app.InfoLine;
-import logbrowser.app.LogBrowserException;
 import logbrowser.app.LogFile;
+import logbrowser.app.LogLine;
 
 /**
  * JTable for the results of the search
@@ -27,7 +28,7 @@ class ResultsTable extends JTable implements ContentTable {
 	private static final long serialVersionUID = 1L;
 	
 	private ResultsTableModel resultsModel;
-	private List<InfoLine> infoLines;
+	private List<InfoLine> infoLines = new ArrayList<>();
 
 	ResultsTable(LogBrowserWindow frame) {
 		resultsModel = new ResultsTableModel(frame);
@@ -42,17 +43,36 @@ class ResultsTable extends JTable implements ContentTable {
 	 * @param infoLines
 	 */
 	void setResults(List<InfoLine> infoLines) {
-		this.infoLines = infoLines;
+		this.infoLines = new ArrayList<>(infoLines);
 
 		// Set the content in the model, calculate max width (adding 20% extra space):
-		int maxLineWidth = (int)(resultsModel.setResults(infoLines) * 1.2);
+		int maxLineWidth = (int)(resultsModel.setResults(this.infoLines) * 1.2);
 		
 		// Resize the table:
+		resize(maxLineWidth);
+		
+		this.fireTableDataChanged();
+	}
+
+	/**
+	 * Add found results at the end of the JTable (while the search is running)
+	 * @param infoLines
+	 */
+	void addResults(List<InfoLine> infoLines) {
+		int first = this.infoLines.size();
+		this.infoLines.addAll(infoLines);
+
+		// Only the new rows are measured, the table never gets narrower:
+		int maxLineWidth = (int)(resultsModel.measure(first, this.infoLines.size()) * 1.2);
+		resize(Math.max(maxLineWidth, this.getColumnModel().getColumn(0).getPreferredWidth()));
+
+		resultsModel.fireTableRowsInserted(first, this.infoLines.size() - 1);
+	}
+
+	private void resize(int maxLineWidth) {
 		int height = this.getRowHeight() * infoLines.size();
 		this.getParent().setPreferredSize(new Dimension(maxLineWidth, height));
 		this.getColumnModel().getColumn(0).setPreferredWidth(maxLineWidth);
-		
-		this.fireTableDataChanged();
 	}
     
     /**
@@ -64,24 +84,26 @@ LogFile getLogFile(int rowIndex) {
     
     /**
      * Return the line number of the selected row
-     * (will be null if it is a File header line)
+     * (will be null if it is a File header line, or the number of the line is unknown)
      */
     Integer getLineNumber(int rowIndex) {
-    	if (infoLines.get(rowIndex).getLine() == null) {
+    	LogLine line = infoLines.get(rowIndex).getLine();
+    	if (line == null || line.getLineNumber() == LogLine.NO_LINE_NUMBER) {
     		return null;
     	} else {
-    		return infoLines.get(rowIndex).getLine().getLineNumber();
+    		return line.getLineNumber();
     	}
     }
 
 	// ContentTable implementation ------------------------------------------------
 	
-	public List<String> getContent() throws LogBrowserException, IOException {
-		return resultsModel.getResults();
+	public String getText(int index) {
+		InfoLine infoLine = infoLines.get(index);
+		return infoLine.getLine() == null ? null : infoLine.getLine().getText();
 	}
-	
-	public void updateLine(int index, String text) {
-		resultsModel.updateLine(index, text);
+
+	public NavigableMap<Integer, String> getHighlights() {
+		return resultsModel.getHighlights();
 	}
 	
 	public void fireTableDataChanged() {
@@ -95,21 +117,24 @@ public void showLine(int lineNumber) {
 
 /******************************************************************
  * Results data model
+ * The rows are converted to HTML when they are shown.
  */
 class ResultsTableModel extends AbstractTableModel {
 	private static final long serialVersionUID = 1L;
 
-	private List<String> results;
+	private List<InfoLine> results;
+	private NavigableMap<Integer, String> highlights;
 
 	private LogBrowserWindow frame;
 	
 	ResultsTableModel(LogBrowserWindow frame) {
 		this.frame = frame;
 		results = new ArrayList<>();
+		highlights = new TreeMap<>();
 	}
 
-	List<String> getResults() {
-		return results;
+	NavigableMap<Integer, String> getHighlights() {
+		return highlights;
 	}
 
 	/**
@@ -120,32 +145,26 @@ List<String> getResults() {
 	 */
 	int setResults(List<InfoLine> results) {
 		
-		this.results.clear();
+		this.results = results;
+		this.highlights.clear();
 
-		int maxLineWidth = 0;
-		for (InfoLine line : results) {
-			String text = "";
-			if (line.getType() == InfoLine.Type.FILE) {
-				text = "<span style=\"color:blue\">" + line.getFile() + "</span>";
-			} 
-			else if (line.getType() == InfoLine.Type.LINE){
-				// Line number is 0 based:
-				int lineNumber = line.getLine().getLineNumber() + 1;
-				
-				text = "<span style=\"color:red;\">" + String.format("%05d", lineNumber) + "</span> " + 
-			    "<code>" + StringEscapeUtils.escapeHtml(line.getLine().getText()) + "</code>";
-			}
+		return measure(0, results.size());
+	}
 
-			this.results.add(text);
-			int size = frame.metrics.stringWidth(text);
+	/**
+	 * Calculate and return the length of the longest line of some rows
+	 * @param from
+	 * @param to : exclusive
+	 * @return
+	 */
+	int measure(int from, int to) {
+		int maxLineWidth = 0;
+		for (int i = from; i < to; i++) {
+			int size = frame.metrics.stringWidth(getValueAt(i, 0).toString());
 			maxLineWidth = Math.max(size, maxLineWidth);
 		}
 		return maxLineWidth;
 	}
-    
-	void updateLine(int index, String text) {
-		this.results.set(index, text);
-	}
 	
 	// AbstractTableModel implementation -----------------------------------------
 
@@ -161,7 +180,32 @@ public int getColumnCount() {
 
 	@Override
 	public Object getValueAt(int rowIndex, int columnIndex) {
-		return results.get(rowIndex);
+		InfoLine line = results.get(rowIndex);
+		String text = "";
+		if (line.getType() == InfoLine.Type.FILE) {
+			text = "<span style=\"color:blue\">" + line.getFile() + "</span>";
+			if (line.getCount() != InfoLine.NO_COUNT) {
+				// Found lines (a minimum if the search stopped), and the shown ones:
+				text += " <span style=\"color:gray\">(" + line.getCount() + (line.isComplete() ? "" : "+") + " lines";
+				if (line.getShown() < line.getCount()) {
+					text += ", " + line.getShown() + " shown";
+				}
+				text += ")</span>";
+			}
+		} 
+		else if (line.getType() == InfoLine.Type.LINE){
+			// Line number is 0 based (and it can be unknown):
+			int lineNumber = line.getLine().getLineNumber();
+			String number = lineNumber == LogLine.NO_LINE_NUMBER ? "-----" : String.format("%05d", lineNumber + 1);
+			
+			String html = highlights.get(rowIndex);
+			if (html == null) {
+				html = StringEscapeUtils.escapeHtml(line.getLine().getText());
+			}
+			text = "<span style=\"color:red;\">" + number + "</span> " + 
+		    "<code>" + html + "</code>";
+		}
+		return text;
 	}
 
     @Override
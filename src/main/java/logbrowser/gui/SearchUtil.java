@@ -1,9 +1,14 @@
 package logbrowser.gui;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import org.apache.commons.lang.StringEscapeUtils;
 
 import logbrowser.app.LogBrowserException;
+import logbrowser.app.search.Query;
 
 /**
  * Utility for searching text in the Results table and the opened files. 
@@ -32,81 +37,82 @@ static class Position {
 	}
 	
 	/**
-	 * Search a text in a FileTable and highlight results
+	 * Search a query in a FileTable and highlight results
 	 * @param table
-	 * @param text
+	 * @param query : the compiled query (see Query)
 	 * @return Results object
 	 * @throws LogBrowserException
 	 * @throws IOException
 	 */
-	static Results highlightText(ContentTable table, String text) throws LogBrowserException, IOException {
+	static Results highlightText(ContentTable table, Query query) throws LogBrowserException, IOException {
 		// Clear previous highlights:
 		clearHighlights(table);
 
 		// Search text and highlight results:
-		List<String> content = table.getContent();
-
 		Results results = new Results();
-		boolean first = true;
-		for(int i = 0; i < content.size(); i++) {
-			String line = content.get(i);
-			
-			// Find occurrences inside the line:
-			int pos = 0;
-			boolean foundInLine = false;
-			while((pos = line.indexOf(text, pos)) != -1) {
-				results.totalFound++;
-				foundInLine = true;
-				pos++;
+		highlightText(table, query, 0, table.getRowCount(), results);
+		if (results.linesFound > 0) {
+			table.fireTableDataChanged();
+		}
+		return results;
+	}
+
+	/**
+	 * Search a query in some rows of a table and highlight results (eg: the rows added to the table by a search).
+	 * The first occurrence is marked as the current one if there are no previous results.
+	 * @param table
+	 * @param query : the compiled query (see Query)
+	 * @param from : the first row
+	 * @param to : the last row (exclusive)
+	 * @param results : the results are added to these
+	 * @throws LogBrowserException
+	 * @throws IOException
+	 */
+	static void highlightText(ContentTable table, Query query, int from, int to, Results results) throws LogBrowserException, IOException {
+		NavigableMap<Integer, String> highlights = table.getHighlights();
+
+		boolean first = results.totalFound == 0;
+		BitSet found = new BitSet();
+		for(int i = from; i < to; i++) {
+			String text = table.getText(i);
+			if (text == null || !query.matches(text)) {
+				continue;
 			}
 			
-			if (foundInLine) {
-				results.linesFound++;
-
-				String newText = HIGHLIGHT + text + HIGHLIGHT_END;
-				line = line.replace(text, newText);
+			// Find occurrences inside the line:
+			found.clear();
+			int count = query.find(text, found);
+			results.totalFound += count;
+			results.linesFound++;
 
+			// Highlight them (the text is converted to HTML):
+			StringBuilder line = new StringBuilder(text.length() + 64);
+			int pos = 0;
+			for (int start = found.nextSetBit(0); start != -1; start = found.nextSetBit(pos)) {
 				// Mark the first occurrence of the first line:
+				String highlight = first ? CURRENT_HIGHLIGHT : HIGHLIGHT;
 				if (first) {
-					line = line.replaceFirst(HIGHLIGHT, CURRENT_HIGHLIGHT);
 					results.firstFoundLine = i;
 					first = false;
 				}
-				
-				// Update the line in the table:
-				table.updateLine(i, line);           
+				line.append(StringEscapeUtils.escapeHtml(text.substring(pos, start))).append(highlight);
+				pos = found.nextClearBit(start);
+				line.append(StringEscapeUtils.escapeHtml(text.substring(start, pos))).append(HIGHLIGHT_END);
 			}
+			line.append(StringEscapeUtils.escapeHtml(text.substring(pos)));
+
+			// Update the line in the table:
+			highlights.put(i, line.toString());
 		}
-		if (results.totalFound > 0) {
-			table.fireTableDataChanged();
-		}
-		return results;
 	}
 	
 	/**
 	 * Clear all highlighted occurrences of a previously searched text.
 	 * @param table
 	 */
-	static void clearHighlights(ContentTable table) throws LogBrowserException, IOException {
-		List<String> content = table.getContent();
-
-		boolean found = false;
-		for(int i = 0; i < content.size(); i++) {
-			String line = content.get(i);
-			if (line.indexOf(HIGHLIGHT) != -1) {
-				line = line.replace(HIGHLIGHT, "");
-				found = true;
-			} 
-			if (line.indexOf(CURRENT_HIGHLIGHT) != -1) {
-				line = line.replace(CURRENT_HIGHLIGHT, "");
-				found = true;
-			}
-			if (found) {
-				line = line.replace(HIGHLIGHT_END, "");
-				table.updateLine(i, line);
-			}
-		}
-		if (found) {
+	static void clearHighlights(ContentTable table) {
+		if (!table.getHighlights().isEmpty()) {
+			table.getHighlights().clear();
 			table.fireTableDataChanged();
 		}
 	}
@@ -115,46 +121,41 @@ static void clearHighlights(ContentTable table) throws LogBrowserException, IOEx
 	 * Go to the previous highlighted result.
 	 * @param table
 	 * @return the row with the new current result, or -1 if not found.
-	 * @throws LogBrowserException
-	 * @throws IOException
 	 */
-	static int previous(ContentTable table) throws LogBrowserException, IOException {
-		List<String> content = table.getContent();
+	static int previous(ContentTable table) {
+		NavigableMap<Integer, String> highlights = table.getHighlights();
 
-		Position cp = getCurrent(content);
+		Position cp = getCurrent(highlights);
 		if (cp == null) {
 			return -1;
 		}
 		
 		Position np = null;
 		// First search in the same line:
-		int pos = content.get(cp.line).indexOf(HIGHLIGHT);
+		int pos = highlights.get(cp.line).indexOf(HIGHLIGHT);
 		if (pos != -1 && pos < cp.pos) {
 			np = new Position(cp.line, pos);
 		} else {
 			// ...then search in the previous lines:
-			for(int i = cp.line - 1; i >= 0; i--) {
-				pos = content.get(i).lastIndexOf(HIGHLIGHT);
-				if (pos != -1) {
-					np = new Position(i, pos);
-					break;
-				}
+			Map.Entry<Integer, String> entry = highlights.lowerEntry(cp.line);
+			if (entry != null) {
+				np = new Position(entry.getKey(), entry.getValue().lastIndexOf(HIGHLIGHT));
 			}
 		}
 
-		if (cp != null && np != null) {
-			String line = replace(content.get(cp.line), CURRENT_HIGHLIGHT, HIGHLIGHT, cp.pos);
+		if (np != null) {
+			String line = replace(highlights.get(cp.line), CURRENT_HIGHLIGHT, HIGHLIGHT, cp.pos);
 			if (cp.line == np.line) {
 				// Both current and next in same line:
-					String subLine = line.substring(0, cp.pos);
-					pos = subLine.lastIndexOf(HIGHLIGHT);
+				String subLine = line.substring(0, cp.pos);
+				pos = subLine.lastIndexOf(HIGHLIGHT);
 				String newLine = replace(line, HIGHLIGHT, CURRENT_HIGHLIGHT, pos);
-				table.updateLine(cp.line, newLine);
+				highlights.put(cp.line, newLine);
 			} else {
 				// Different lines:
-				table.updateLine(cp.line, line);
-				String newLine = replace(content.get(np.line), HIGHLIGHT, CURRENT_HIGHLIGHT, np.pos);
-				table.updateLine(np.line, newLine);
+				highlights.put(cp.line, line);
+				String newLine = replace(highlights.get(np.line), HIGHLIGHT, CURRENT_HIGHLIGHT, np.pos);
+				highlights.put(np.line, newLine);
 			}
 			return np.line;
 		} else {
@@ -166,45 +167,40 @@ static int previous(ContentTable table) throws LogBrowserException, IOException
 	 * Go to the next highlighted result.
 	 * @param table
 	 * @return the row with the new current result, or -1 if not found.
-	 * @throws LogBrowserException
-	 * @throws IOException
 	 */
-	static int next(ContentTable table) throws LogBrowserException, IOException {
-		List<String> content = table.getContent();
+	static int next(ContentTable table) {
+		NavigableMap<Integer, String> highlights = table.getHighlights();
 
-		Position cp = getCurrent(content);
+		Position cp = getCurrent(highlights);
 		if (cp == null) {
 			return -1;
 		}
 		
 		Position np = null;
 		// First search in the same line:
-		int pos = content.get(cp.line).indexOf(HIGHLIGHT, cp.pos);
+		int pos = highlights.get(cp.line).indexOf(HIGHLIGHT, cp.pos);
 		if (pos != -1) {
 			np = new Position(cp.line, pos);
 		} else {
 			// ...then search in the following lines:
-			for(int i = cp.line + 1; i < content.size(); i++) {
-				pos = content.get(i).indexOf(HIGHLIGHT);
-				if (pos != -1) {
-					np = new Position(i, pos);
-					break;
-				}
+			Map.Entry<Integer, String> entry = highlights.higherEntry(cp.line);
+			if (entry != null) {
+				np = new Position(entry.getKey(), entry.getValue().indexOf(HIGHLIGHT));
 			}
 		}
 
-		if (cp != null && np != null) {
-			String line = replace(content.get(cp.line), CURRENT_HIGHLIGHT, HIGHLIGHT, cp.pos);
+		if (np != null) {
+			String line = replace(highlights.get(cp.line), CURRENT_HIGHLIGHT, HIGHLIGHT, cp.pos);
 			if (cp.line == np.line) {
 				// Both current and next in same line:
 				pos = line.indexOf(HIGHLIGHT, cp.pos + CURRENT_HIGHLIGHT.length() + 1);
 				String newLine = replace(line, HIGHLIGHT, CURRENT_HIGHLIGHT, pos);
-				table.updateLine(cp.line, newLine);
+				highlights.put(cp.line, newLine);
 			} else {
 				// Different lines:
-				table.updateLine(cp.line, line);
-				String newLine = replace(content.get(np.line), HIGHLIGHT, CURRENT_HIGHLIGHT, np.pos);
-				table.updateLine(np.line, newLine);
+				highlights.put(cp.line, line);
+				String newLine = replace(highlights.get(np.line), HIGHLIGHT, CURRENT_HIGHLIGHT, np.pos);
+				highlights.put(np.line, newLine);
 			}
 			return np.line;
 		} else {
@@ -212,12 +208,11 @@ static int next(ContentTable table) throws LogBrowserException, IOException {
 		}
 	}
 	
-	static Position getCurrent(List<String> content) {
-		for(int i = 0; i < content.size(); i++) {
-			String line = content.get(i);
-			int pos = line.indexOf(CURRENT_HIGHLIGHT); 
+	static Position getCurrent(NavigableMap<Integer, String> highlights) {
+		for (Map.Entry<Integer, String> entry : highlights.entrySet()) {
+			int pos = entry.getValue().indexOf(CURRENT_HIGHLIGHT); 
 			if (pos != -1) {
-				return new Position(i, pos);
+				return new Position(entry.getKey(), pos);
 			}
 		}
 		return null;
@@ -0,0 +1,106 @@
+package logbrowser.app.fileread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * The references to the lines kept in the ContentCache: a temporary copy is removed when the cache and all the users
+ * of the lines have closed them.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class ContentCacheTest {
+
+	private static final FileInfo INFO = new FileInfo(12, 1000, null);
+
+	@Test
+	public void evictedWhileUsed() throws IOException {
+		ContentCache cache = new ContentCache(1024 * 1024, 100);
+		File first = temporaryCopy("line 1\nline 2\n");
+		Lines lines = new LineIndex(first, true);
+		cache.put("first", INFO, lines);
+		assertEquals(14, cache.getDiskSize());
+
+		// A tab uses the lines, and the creator closes its reference:
+		Lines used = cache.get("first", INFO);
+		assertSame(lines, used);
+		lines.close();
+
+		// The copy exceeds the disk size of the cache with a second file:
+		cache.put("second", INFO, new LineIndex(temporaryCopy(repeat("a long line\n", 8)), true));
+		assertNull(cache.get("first", INFO));
+		assertTrue("The copy is kept while the tab is open", first.exists());
+		assertEquals("line 2", used.get(1).getText());
+
+		used.close();
+		assertFalse("The copy is removed when the tab is closed", first.exists());
+		assertNull(lines.retain());
+	}
+
+	@Test
+	public void changedFile() throws IOException {
+		ContentCache cache = new ContentCache(1024 * 1024, 1024 * 1024);
+		File copy = temporaryCopy("line 1\n");
+		Lines lines = new LineIndex(copy, true);
+		cache.put("file", INFO, lines);
+		lines.close();
+		assertTrue(copy.exists());
+
+		assertNull(cache.get("file", new FileInfo(13, 2000, null)));
+		assertFalse("The copy of the old version is removed", copy.exists());
+		assertEquals(0, cache.getDiskSize());
+	}
+
+	@Test
+	public void tooBig() throws IOException {
+		ContentCache cache = new ContentCache(1024 * 1024, 10);
+		File copy = temporaryCopy("a line longer than the cache\n");
+		Lines lines = new LineIndex(copy, true);
+		cache.put("file", INFO, lines);
+		assertFalse(cache.contains("file"));
+
+		// The only reference is the one of the creator:
+		lines.close();
+		assertFalse(copy.exists());
+	}
+
+	@Test
+	public void linesInMemory() throws IOException {
+		ContentCache cache = new ContentCache(1024 * 1024, 10);
+		Lines lines = LineStore.read(new ByteArrayInputStream("line 1\r\nline 2".getBytes(StandardCharsets.US_ASCII)), 0);
+		cache.put("file", INFO, lines);
+		Lines cached = cache.get("file", INFO);
+		assertSame(lines, cached);
+		cached.close();
+		assertEquals("line 1", cached.get(0).getText());
+		assertEquals("line 2", cached.get(1).getText());
+		assertEquals(0, cache.getDiskSize());
+	}
+
+	private static File temporaryCopy(String content) throws IOException {
+		File file = File.createTempFile("logbrowser", ".log");
+		file.deleteOnExit();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+
+	private static String repeat(String text, int times) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < times; i++) {
+			sb.append(text);
+		}
+		return sb.toString();
+	}
+}
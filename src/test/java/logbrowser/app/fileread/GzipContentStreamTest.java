@@ -0,0 +1,203 @@
+package logbrowser.app.fileread;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * The content of gzip files of several members, with optional header fields and BGZF members,
+ * read from a stream that returns a few bytes at a time, stops at the end of every member and has nothing available
+ * (as a file being transferred).
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class GzipContentStreamTest {
+
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	@Test
+	public void empty() throws IOException {
+		assertArrayEquals(new byte[0], read());
+	}
+
+	@Test
+	public void members() throws IOException {
+		byte[] first = lines(0, 1000);
+		byte[] second = lines(1000, 200000);
+		byte[] third = "the last line, without line break".getBytes(StandardCharsets.US_ASCII);
+
+		byte[] file = read(member(first, 0, false), member(new byte[0], 0, false), member(second, FNAME | FCOMMENT, false),
+						   member(third, FHCRC | FEXTRA | FNAME, false));
+		assertArrayEquals(concat(first, second, third), file);
+	}
+
+	@Test
+	public void bgzfAndMembers() throws IOException {
+		byte[] first = lines(0, 1000);
+		byte[] second = lines(1000, 2000);
+		byte[] third = lines(2000, 100000);
+
+		byte[] file = read(member(first, 0, true), member(second, 0, true), member(third, FNAME, false),
+						   member(second, 0, false));
+		assertArrayEquals(concat(first, second, third, second), file);
+	}
+
+	@Test
+	public void dataAfterMembers() throws IOException {
+		byte[] content = lines(0, 1000);
+		byte[] file = read(member(content, 0, false), member(content, 0, false), new byte[1000]);
+		assertArrayEquals(concat(content, content), file);
+	}
+
+	@Test
+	public void corrupt() throws IOException {
+		byte[] content = lines(0, 1000);
+		byte[] member = member(content, 0, false);
+
+		byte[] wrongCrc = member.clone();
+		wrongCrc[wrongCrc.length - 8] ^= 1;
+		assertFails(member, wrongCrc);
+
+		byte[] wrongSize = member.clone();
+		wrongSize[wrongSize.length - 4] ^= 1;
+		assertFails(member, wrongSize);
+
+		assertFails(member, Arrays.copyOf(member, member.length - 4));
+		assertFails(member, Arrays.copyOf(member, member.length / 2));
+		assertFails("not gzip".getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static byte[] lines(int from, int to) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = from; i < to; i++) {
+			sb.append("2024-03-15 10:00:00,000 INFO line ").append(i).append('\n');
+		}
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * A gzip member (RFC 1952) with the optional fields of the flags, or a BGZF member (with its size in the extra field).
+	 */
+	private static byte[] member(byte[] data, int flags, boolean bgzf) throws IOException {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		while (!deflater.finished()) {
+			deflated.write(buffer, 0, deflater.deflate(buffer));
+		}
+		deflater.end();
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		header.write(new byte[] { 0x1f, (byte) 0x8b, 8, (byte) (bgzf ? FEXTRA : flags), 0, 0, 0, 0, 0, (byte) 0xff });
+		if (bgzf) {
+			int size = 12 + 6 + deflated.size() + 8;
+			header.write(new byte[] { 6, 0, 'B', 'C', 2, 0, (byte) (size - 1), (byte) ((size - 1) >> 8) });
+		} else {
+			if ((flags & FEXTRA) != 0) {
+				header.write(new byte[] { 4, 0, 'x', 'y', 0, 0 });
+			}
+			if ((flags & FNAME) != 0) {
+				header.write("name.log\0".getBytes(StandardCharsets.US_ASCII));
+			}
+			if ((flags & FCOMMENT) != 0) {
+				header.write("a comment\0".getBytes(StandardCharsets.US_ASCII));
+			}
+			if ((flags & FHCRC) != 0) {
+				long crc = crc(header.toByteArray());
+				header.write(new byte[] { (byte) crc, (byte) (crc >> 8) });
+			}
+		}
+
+		ByteArrayOutputStream member = new ByteArrayOutputStream();
+		member.write(header.toByteArray());
+		member.write(deflated.toByteArray());
+		long crc = crc(data);
+		member.write(new byte[] { (byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+								  (byte) data.length, (byte) (data.length >> 8), (byte) (data.length >> 16), (byte) (data.length >> 24) });
+		return member.toByteArray();
+	}
+
+	private static long crc(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			bytes.write(part, 0, part.length);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read the content of a file, from a stream that returns up to 1000 bytes at a time, never after the end of a part,
+	 * and has nothing available.
+	 */
+	private static byte[] read(byte[]... parts) throws IOException {
+		byte[] file = concat(parts);
+		int[] ends = new int[parts.length];
+		for (int i = 0, end = 0; i < parts.length; i++) {
+			end += parts[i].length;
+			ends[i] = end;
+		}
+		InputStream slow = new InputStream() {
+			private int position;
+
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (position == file.length) {
+					return -1;
+				}
+				int end = file.length;
+				for (int i = ends.length - 1; i >= 0 && ends[i] > position; i--) {
+					end = ends[i];
+				}
+				int count = Math.min(Math.min(len, 1000), end - position);
+				System.arraycopy(file, position, b, off, count);
+				position += count;
+				return count;
+			}
+
+			@Override
+			public int available() {
+				return 0;
+			}
+		};
+		try (InputStream is = new GzipContentStream(slow)) {
+			return IOUtils.toByteArray(is);
+		}
+	}
+
+	private static void assertFails(byte[]... parts) {
+		try {
+			byte[] content = read(parts);
+			fail("Read " + content.length + " bytes of a corrupt file");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package logbrowser.app.fileread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import logbrowser.app.LogLine;
+import logbrowser.app.search.FoundLines;
+import logbrowser.app.search.LiteralMatcher;
+import logbrowser.app.search.Query;
+import logbrowser.app.search.SearchLimits;
+import logbrowser.config.LogConfig;
+
+/**
+ * @author rodriag
+ * @since 2.0
+ */
+public class ReadFileSshTest {
+
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	/**
+	 * A text with the characters that a shell would interpret without quotes.
+	 */
+	private static final String TEXT = "it's $HOME `id` \\ \"x\"";
+
+	private static final String CONTENT =
+		"first line\n" +
+		"ERROR " + TEXT + "\n" +
+		"\n" +
+		"IT'S $HOME `ID` \\ \"X\" in upper case\r\n" +
+		"it's $HOME only\n" +
+		TEXT + " at the end, without line break";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void grepCommand() throws Exception {
+		String path = "/var/log/it's here.log";
+		String grep = "LC_ALL=C grep -a -n -F -e 'it'\\''s $HOME `id` \\ \"x\"'";
+		String grepIgnoreCase = "LC_ALL=C grep -a -n -F -i -e 'it'\\''s $HOME `id` \\ \"x\"'";
+		String quotedPath = "'/var/log/it'\\''s here.log'";
+
+		assertEquals(grep + " " + quotedPath, newFile(path, null).grepCommand(new LiteralMatcher(TEXT, CHARSET)));
+		assertEquals(grepIgnoreCase + " " + quotedPath,
+					 newFile(path, null).grepCommand(new LiteralMatcher(TEXT, CHARSET, true)));
+
+		String[][] decompressors = { { "GZ", "gzip" }, { "BZ2", "bzip2" }, { "LZ4", "lz4" }, { "ZST", "zstd" } };
+		assertEquals(LogConfig.Compression.values().length, decompressors.length);
+		for (String[] row : decompressors) {
+			ReadFileSsh file = newFile(path, LogConfig.Compression.valueOf(row[0]));
+			assertEquals(row[1] + " -dc " + quotedPath + " | " + grep, file.grepCommand(new LiteralMatcher(TEXT, CHARSET)));
+			assertEquals(row[1] + " -dc " + quotedPath + " | " + grepIgnoreCase,
+						 file.grepCommand(new LiteralMatcher(TEXT, CHARSET, true)));
+		}
+	}
+
+	@Test
+	public void readGrepOutput() throws Exception {
+		Query query = Query.parse("Error", true);
+		String output = "2:ERROR: a:b\n" +
+						"10:no match\n" +
+						"11:error\r\n" +
+						"12:error:";
+		assertEquals("[1 ERROR: a:b, 10 error, 11 error:]", found(newFile("a.log", null), output, query).toString());
+
+		assertEquals("[]", found(newFile("a.log", null), "", query).toString());
+
+		for (String invalid : new String[] { "error\n", ":error\n", "x:error\n", "0:error\n", "-1:error\n" }) {
+			try {
+				found(newFile("a.log", null), "1:error\n" + invalid, query);
+				fail("Invalid output: " + invalid);
+			} catch (IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected output of remote grep"));
+			}
+		}
+	}
+
+	/**
+	 * Run the grep command in a local shell (when it has the decompressor) and read its output,
+	 * to check the quoting of the arguments.
+	 */
+	@Test
+	public void grepInShell() throws Exception {
+		List<String> expected = new ArrayList<>();
+		List<String> expectedIgnoreCase = new ArrayList<>();
+		String[] lines = CONTENT.split("\n", -1);
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i].endsWith("\r") ? lines[i].substring(0, lines[i].length() - 1) : lines[i];
+			if (line.contains(TEXT)) {
+				expected.add(i + " " + line);
+			}
+			if (line.toLowerCase().contains(TEXT.toLowerCase())) {
+				expectedIgnoreCase.add(i + " " + line);
+			}
+		}
+		assertEquals(2, expected.size());
+		assertEquals(3, expectedIgnoreCase.size());
+
+		for (LogConfig.Compression compression : new LogConfig.Compression[] { null, LogConfig.Compression.GZ,
+				LogConfig.Compression.BZ2, LogConfig.Compression.LZ4, LogConfig.Compression.ZST }) {
+			String decompressor = compression == null ? "grep" : newFile("a.log", compression)
+				.grepCommand(new LiteralMatcher(TEXT, CHARSET)).split(" ")[0];
+			if (!hasCommand(decompressor)) {
+				continue;
+			}
+			File file = folder.newFile("it's a file." + compression);
+			try (OutputStream os = compress(new FileOutputStream(file), compression)) {
+				os.write(CONTENT.getBytes(CHARSET));
+			}
+			ReadFileSsh readFile = newFile(file.getPath(), compression);
+			assertEquals(compression + " case", expected.toString(), grep(readFile, false).toString());
+			assertEquals(compression + " ignore case", expectedIgnoreCase.toString(), grep(readFile, true).toString());
+		}
+	}
+
+	private static ReadFileSsh newFile(String path, LogConfig.Compression compression) throws Exception {
+		return new ReadFileSsh("host", "user", "pwd", path, compression);
+	}
+
+	private static List<String> found(ReadFileSsh file, String output, Query query) throws IOException {
+		FoundLines foundLines = newFoundLines();
+		file.readGrepOutput(new ByteArrayInputStream(output.getBytes(CHARSET)), CHARSET, query, foundLines);
+		return toStrings(foundLines.getLines());
+	}
+
+	private static List<String> grep(ReadFileSsh file, boolean ignoreCase) throws Exception {
+		Query query = Query.parse(TEXT, ignoreCase);
+		Process process = new ProcessBuilder("sh", "-c", file.grepCommand(query.getPrefilter())).start();
+		FoundLines foundLines = newFoundLines();
+		try (InputStream is = process.getInputStream()) {
+			file.readGrepOutput(is, CHARSET, query, foundLines);
+		}
+		String errors = IOUtils.toString(process.getErrorStream(), CHARSET.name());
+		assertTrue(errors, process.waitFor() <= 1 && errors.isEmpty());
+		return toStrings(foundLines.getLines());
+	}
+
+	private static List<String> toStrings(List<LogLine> lines) {
+		List<String> strings = new ArrayList<>();
+		for (LogLine line : lines) {
+			strings.add(line.getLineNumber() + " " + line.getText());
+		}
+		return strings;
+	}
+
+	private static FoundLines newFoundLines() {
+		return new SearchLimits(SearchLimits.DEFAULT_MAX_LINES_PER_FILE, SearchLimits.DEFAULT_MAX_LINES, false, false)
+			.newFoundLines();
+	}
+
+	private static boolean hasCommand(String command) throws Exception {
+		try {
+			return new ProcessBuilder("sh", "-c", "command -v " + command).start().waitFor() == 0;
+		} catch (IOException e) {
+			// No shell:
+			return false;
+		}
+	}
+
+	private static OutputStream compress(OutputStream os, LogConfig.Compression compression) throws IOException {
+		if (compression == null) {
+			return os;
+		}
+		switch (compression) {
+		case GZ:
+			return new GZIPOutputStream(os);
+		case BZ2:
+			return new BZip2CompressorOutputStream(os);
+		case LZ4:
+			return new FramedLZ4CompressorOutputStream(os);
+		default:
+			return new ZstdOutputStream(os);
+		}
+	}
+}
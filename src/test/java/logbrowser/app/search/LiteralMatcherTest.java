@@ -0,0 +1,162 @@
+package logbrowser.app.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The results of LiteralMatcher in some edge cases, and compared with a naive search in random texts.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class LiteralMatcherTest {
+
+	// Few different characters, so the texts are found often (with bytes >= 0x80, and the line break):
+	private static final String ALPHABET = "abcAB C\n\u00e9\u00ff";
+
+	private Random random = new Random(42);
+
+	@Test
+	public void emptyText() {
+		try {
+			new LiteralMatcher("", StandardCharsets.ISO_8859_1);
+			fail("An empty text cannot be searched");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void emptyContent() {
+		ByteBuffer empty = ByteBuffer.allocate(0);
+		assertEquals(-1, new LiteralMatcher("Error", StandardCharsets.ISO_8859_1).indexOf(empty, 0, 0));
+		assertEquals(-1, new LiteralMatcher("Error", StandardCharsets.ISO_8859_1).indexOf("", 0));
+		assertEquals(-1, new LiteralMatcher("E", StandardCharsets.ISO_8859_1).indexOf(empty, 0, 0));
+		assertEquals(-1, LiteralMatcher.indexOf(empty, (byte) 'E', 0, 0));
+		assertEquals(0, LiteralMatcher.count(empty, (byte) 'E', 0, 0));
+	}
+
+	@Test
+	public void startAndEnd() {
+		String content = "Error in the log: error";
+		ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.ISO_8859_1));
+		int end = content.length();
+
+		LiteralMatcher matcher = new LiteralMatcher("Error", StandardCharsets.ISO_8859_1);
+		assertEquals(0, matcher.indexOf(buffer, 0, end));
+		assertEquals(0, matcher.indexOf(content, 0));
+		assertEquals(-1, matcher.indexOf(buffer, 1, end));
+		assertEquals(-1, matcher.indexOf(content, 1));
+		assertEquals(-1, matcher.indexOf(buffer, 0, 4));
+
+		LiteralMatcher ignoreCase = new LiteralMatcher("ERROR", StandardCharsets.ISO_8859_1, true);
+		assertEquals(0, ignoreCase.indexOf(buffer, 0, end));
+		assertEquals(end - 5, ignoreCase.indexOf(buffer, 1, end));
+		assertEquals(end - 5, ignoreCase.indexOf(content, 1));
+		assertEquals(-1, ignoreCase.indexOf(buffer, 1, end - 1));
+
+		assertEquals(0, LiteralMatcher.indexOf(buffer, (byte) 'E', 0, end));
+		assertEquals(end - 1, LiteralMatcher.indexOf(buffer, (byte) 'r', end - 2, end));
+		assertEquals(-1, LiteralMatcher.indexOf(buffer, (byte) 'r', end - 2, end - 2));
+	}
+
+	@Test
+	public void crlf() {
+		String content = "first line\r\nError\r\nlast line\r\n";
+		ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.ISO_8859_1));
+		int end = content.length();
+
+		assertEquals(10, new LiteralMatcher("\r\nError", StandardCharsets.ISO_8859_1).indexOf(buffer, 0, end));
+		assertEquals(12, new LiteralMatcher("error\r", StandardCharsets.ISO_8859_1, true).indexOf(buffer, 0, end));
+		assertEquals(12, new LiteralMatcher("error\r", StandardCharsets.ISO_8859_1, true).indexOf(content, 0));
+		assertEquals(end - 2, new LiteralMatcher("\r\n", StandardCharsets.ISO_8859_1).indexOf(buffer, 18, end));
+		assertEquals(11, LiteralMatcher.indexOf(buffer, (byte) '\n', 0, end));
+		assertEquals(3, LiteralMatcher.count(buffer, (byte) '\n', 0, end));
+		assertEquals(3, LiteralMatcher.count(buffer, (byte) '\r', 0, end));
+	}
+
+	@Test
+	public void indexOfText() {
+		for (int n = 0; n < 500; n++) {
+			String content = randomText(random.nextInt(300));
+			String text = randomText(1 + random.nextInt(4));
+			boolean ignoreCase = random.nextBoolean();
+			LiteralMatcher matcher = new LiteralMatcher(text, StandardCharsets.ISO_8859_1, ignoreCase);
+			ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.ISO_8859_1));
+
+			int to = content.length() - random.nextInt(3);
+			for (int from = 0; from <= to; from++) {
+				int expected = naiveIndexOf(content, text, from, to, ignoreCase);
+				String message = "'" + text + "' in '" + content + "' from " + from + " to " + to + ", ignoreCase " + ignoreCase;
+				assertEquals(message, expected, matcher.indexOf(buffer, from, to));
+				if (to == content.length()) {
+					assertEquals(message, expected, matcher.indexOf(content, from));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void indexOfByte() {
+		for (int n = 0; n < 500; n++) {
+			String content = randomText(random.nextInt(100));
+			byte b = (byte) ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+			ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.ISO_8859_1));
+			for (int from = 0; from <= content.length(); from++) {
+				int expected = naiveIndexOf(content, String.valueOf((char) (b & 0xff)), from, content.length(), false);
+				assertEquals(expected, LiteralMatcher.indexOf(buffer, b, from, content.length()));
+			}
+		}
+	}
+
+	@Test
+	public void count() {
+		for (int n = 0; n < 500; n++) {
+			String content = randomText(random.nextInt(100));
+			byte b = (byte) ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+			ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.ISO_8859_1));
+			int from = random.nextInt(content.length() + 1);
+			int expected = 0;
+			for (int i = from; i < content.length(); i++) {
+				if ((byte) content.charAt(i) == b) {
+					expected++;
+				}
+			}
+			assertEquals(expected, LiteralMatcher.count(buffer, b, from, content.length()));
+		}
+	}
+
+	private String randomText(int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Only the case of the ASCII letters is ignored.
+	 */
+	private static int naiveIndexOf(String content, String text, int from, int to, boolean ignoreCase) {
+		for (int i = from; i + text.length() <= to; i++) {
+			boolean found = true;
+			for (int j = 0; j < text.length() && found; j++) {
+				found = fold(content.charAt(i + j), ignoreCase) == fold(text.charAt(j), ignoreCase);
+			}
+			if (found) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static char fold(char c, boolean ignoreCase) {
+		return ignoreCase && c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+	}
+}
@@ -0,0 +1,61 @@
+package logbrowser.app.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * @author rodriag
+ * @since 2.0
+ */
+public class QueryParserTest {
+
+	/**
+	 * Regular expression, required text (null if there is none) and a text that matches the expression.
+	 */
+	private static final String[][] REQUIRED_TEXTS = {
+		{ "Exception", "Exception", "Exception" },
+		{ "Null.*Exception", "Exception", "NullPointerException" },
+		{ "a\\.b", "a.b", "a.b" },
+		{ "ab+c", "ab", "abbbc" },
+		{ "abc?d", "ab", "abd" },
+		{ "ab*", "a", "abbb" },
+		{ "ab{2}c", "a", "abbc" },
+		{ "x|y", null, "y" },
+		{ "(abc)+def", "def", "abcdef" },
+		{ "[a-z]+Error", "Error", "myError" },
+		{ "\\d+ ms", " ms", "120 ms" },
+		{ "\\x41BC", "BC", "ABC" },
+		{ "\\x{41}BC", "BC", "ABC" },
+		{ "\\u0041BC", "BC", "ABC" },
+		{ "\\0101BC", "BC", "ABC" },
+		{ "\\07BC", "BC", "\u0007BC" },
+		{ "\\0477", "7", "'7" },
+		{ "\\cMab", "ab", "\rab" },
+		{ "(?<n>x)\\k<n>yz", "yz", "xxyz" },
+		{ "\\p{Lu}bc", "bc", "Abc" },
+		{ "\\P{Lu}bc", "bc", "abc" },
+		{ "\\pLbc", "bc", "abc" },
+		{ "(a)\\1bc", "bc", "aabc" },
+		{ "\\Qa.b\\E", "a.b", "a.b" },
+		{ "\\Qab\\E*c", "a", "ac" },
+		{ "ab\\Q\\E*", "a", "a" },
+		{ "(?i)abc", null, "ABC" },
+	};
+
+	@Test
+	public void requiredText() {
+		for (String[] row : REQUIRED_TEXTS) {
+			String regex = row[0];
+			String required = QueryParser.requiredText(regex);
+			assertEquals("Required text of /" + regex + "/", row[1], required);
+			assertTrue("/" + regex + "/ matches " + row[2], Pattern.matches(regex, row[2]));
+			if (required != null) {
+				assertTrue("The match of /" + regex + "/ contains " + required, row[2].contains(required));
+			}
+		}
+	}
+}
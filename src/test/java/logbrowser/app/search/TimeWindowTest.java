@@ -0,0 +1,180 @@
+package logbrowser.app.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import logbrowser.app.LogBrowserException;
+
+/**
+ * The lines found by TimeWindow in some edge cases, and by TimeWindow.seek() compared with a linear search
+ * in generated logs.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class TimeWindowTest {
+
+	private static final int MINUTE = 60 * 1000;
+	private static final int HOUR = 60 * MINUTE;
+	private static final int DAY = 24 * HOUR;
+
+	private Random random = new Random(42);
+
+	@Test
+	public void emptyWindow() {
+		try {
+			new TimeWindow(1000, 1000);
+			fail("The window is empty");
+		} catch (LogBrowserException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void seekEmpty() throws LogBrowserException {
+		TimeWindow window = new TimeWindow(0, DAY).withFormat("HH:mm:ss");
+		assertEquals(0, window.seek(ByteBuffer.allocate(0), 0, 0, 1000));
+	}
+
+	@Test
+	public void seekStartAndEnd() throws LogBrowserException {
+		TimeWindow window = new TimeWindow(0, DAY).withFormat("HH:mm:ss");
+		String log = "10:00:00 first\n\tat line\n11:00:00 second\n12:00:00 last, without line break";
+		ByteBuffer buffer = ByteBuffer.wrap(log.getBytes(StandardCharsets.US_ASCII));
+		int limit = buffer.limit();
+		int second = log.indexOf("11:00:00");
+		int last = log.indexOf("12:00:00");
+
+		assertEquals(0, window.seek(buffer, 0, limit, 0));
+		assertEquals(0, window.seek(buffer, 0, limit, 10 * HOUR));
+		assertEquals(second, window.seek(buffer, 0, limit, 10 * HOUR + 1));
+		assertEquals(last, window.seek(buffer, 0, limit, 12 * HOUR));
+		assertEquals(limit, window.seek(buffer, 0, limit, 12 * HOUR + 1));
+		assertEquals(last, window.seek(buffer, last, limit, 0));
+	}
+
+	@Test
+	public void seekCrlf() throws LogBrowserException {
+		TimeWindow window = new TimeWindow(0, DAY).withFormat("HH:mm:ss");
+		// Longer than LINEAR_SEEK, so the lines are found with the binary search:
+		StringBuilder log = new StringBuilder();
+		List<Integer> starts = new ArrayList<>();
+		for (int minute = 0; minute < 24 * 60; minute++) {
+			starts.add(log.length());
+			log.append(String.format("%02d:%02d:00 line\r\n", minute / 60, minute % 60));
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(log.toString().getBytes(StandardCharsets.US_ASCII));
+		for (int minute = 0; minute < 24 * 60; minute += 7) {
+			assertEquals("Seek minute " + minute, (int) starts.get(minute), window.seek(buffer, 0, buffer.limit(), minute * MINUTE));
+			assertEquals("Seek after minute " + minute,
+						 minute + 1 < starts.size() ? (int) starts.get(minute + 1) : buffer.limit(),
+						 window.seek(buffer, 0, buffer.limit(), minute * MINUTE + 1));
+		}
+	}
+
+	@Test
+	public void compare() throws LogBrowserException {
+		TimeWindow window = new TimeWindow(10 * HOUR, 11 * HOUR).withFormat("HH:mm:ss");
+		assertEquals(-1, window.compare("\tat a line without timestamp before the first timestamp"));
+		assertEquals(-1, window.compare("09:59:59 before"));
+		assertEquals(0, window.compare("10:00:00 start, included\r"));
+		assertEquals(0, window.compare("\tat a line without timestamp"));
+		assertEquals(0, window.compare(""));
+		assertEquals(0, window.compare("10:59:59 inside"));
+		assertEquals(1, window.compare("11:00:00 end, not included"));
+		assertEquals(1, window.compare("\tat a line without timestamp"));
+	}
+
+	@Test
+	public void seek() throws LogBrowserException {
+		TimeWindow window = new TimeWindow(0, DAY).withFormat("yyyy-MM-dd HH:mm:ss,SSS");
+		for (int n = 0; n < 20; n++) {
+			List<Integer> starts = new ArrayList<>();
+			List<Integer> times = new ArrayList<>();
+			ByteBuffer buffer = generateLog(random.nextInt(5000), starts, times, false);
+			int limit = buffer.limit();
+
+			for (int k = 0; k < 50; k++) {
+				int time = random.nextInt(DAY);
+				assertEquals("Seek " + time, linearSeek(starts, times, time, limit), window.seek(buffer, 0, limit, time));
+			}
+			// The times of the lines:
+			for (int k = 0; k < starts.size(); k += 1 + random.nextInt(100)) {
+				if (times.get(k) != TimeWindow.NO_TIME) {
+					int time = times.get(k);
+					assertEquals("Seek " + time, linearSeek(starts, times, time, limit), window.seek(buffer, 0, limit, time));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void seekEnglishNames() throws LogBrowserException {
+		Locale locale = Locale.getDefault();
+		Locale.setDefault(Locale.GERMANY);
+		try {
+			TimeWindow window = new TimeWindow(0, DAY).withFormat("dd/MMM/yyyy:HH:mm:ss");
+			List<Integer> starts = new ArrayList<>();
+			List<Integer> times = new ArrayList<>();
+			ByteBuffer buffer = generateLog(3000, starts, times, true);
+			for (int k = 0; k < 50; k++) {
+				int time = random.nextInt(DAY);
+				assertEquals("Seek " + time, linearSeek(starts, times, time, buffer.limit()),
+							 window.seek(buffer, 0, buffer.limit(), time));
+			}
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	/**
+	 * A log of a day, with lines in chronological order (some of them with the same time) and lines without timestamp.
+	 * @param englishNames : the timestamps have the name of the month, in seconds (otherwise in ms)
+	 */
+	private ByteBuffer generateLog(int lines, List<Integer> starts, List<Integer> times, boolean englishNames) {
+		StringBuilder log = new StringBuilder();
+		int time = random.nextInt(1000);
+		for (int i = 0; i < lines; i++) {
+			starts.add(log.length());
+			if (i > 0 && random.nextInt(5) == 0) {
+				times.add(TimeWindow.NO_TIME);
+				log.append("\tat logbrowser.Line.line(Line.java:" + i + ")\n");
+				continue;
+			}
+			time = Math.min(time + random.nextInt(2 * DAY / Math.max(lines, 1)), DAY - 1000);
+			if (englishNames) {
+				time -= time % 1000;
+			}
+			times.add(time);
+			int seconds = time / 1000;
+			if (englishNames) {
+				log.append(String.format("15/Mar/2024:%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60));
+			} else {
+				log.append(String.format("2024-03-15 %02d:%02d:%02d,%03d", seconds / 3600, seconds / 60 % 60, seconds % 60, time % 1000));
+			}
+			log.append(" INFO line ").append(i).append('\n');
+		}
+		return ByteBuffer.wrap(log.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @return the start of the first line with a timestamp at or after the time, or the limit
+	 */
+	private static int linearSeek(List<Integer> starts, List<Integer> times, int time, int limit) {
+		for (int i = 0; i < starts.size(); i++) {
+			if (times.get(i) != TimeWindow.NO_TIME && times.get(i) >= time) {
+				return starts.get(i);
+			}
+		}
+		return limit;
+	}
+}
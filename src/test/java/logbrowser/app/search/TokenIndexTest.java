@@ -0,0 +1,231 @@
+package logbrowser.app.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The candidate lines of TokenIndex in some edge cases, and compared with a naive search in generated logs:
+ * every line that contains a text must be a candidate.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class TokenIndexTest {
+
+	private static final String[] WORDS = {
+		"error", "Error", "ERROR", "conn", "connection", "refused", "id_42", "a", "ab", "user=bob", "x.y.z", "404",
+		"java.io.IOException", "at", "Timeout", "time"
+	};
+	private static final String[] SEPARATORS = { " ", " ", ".", ": ", "=", "-", "\t", "\r" };
+
+	private Random random = new Random(42);
+
+	@Test
+	public void emptyFile() throws IOException {
+		TokenIndex index = build("");
+		assertEquals(0, index.getLineCount());
+		assertEquals(0, index.getStart(0));
+		assertEquals(new BitSet(), index.find("error"));
+		assertEquals(new BitSet(), writeAndRead(index).find("error"));
+	}
+
+	@Test
+	public void textWithoutTokens() {
+		TokenIndex index = build("error\n\n: =\n");
+		assertEquals(3, index.getLineCount());
+		assertNull(index.find(""));
+		assertNull(index.find(": ="));
+		assertEquals(bits(0), index.find("error"));
+	}
+
+	@Test
+	public void startAndEnd() throws IOException {
+		TokenIndex index = build("error at the start\nmiddle\nat the end: Error");
+		assertEquals(3, index.getLineCount());
+		assertEquals(index.getEnd(2), "error at the start\nmiddle\nat the end: Error".length());
+		for (TokenIndex i : new TokenIndex[] { index, writeAndRead(index) }) {
+			assertEquals(bits(0, 2), i.find("ERROR"));
+			assertEquals(bits(0, 2), i.find("rror"));
+			assertEquals(bits(0, 2), i.find("err"));
+			assertEquals(bits(0), i.find("at the start"));
+			assertEquals(bits(2), i.find("end: error"));
+			assertEquals(bits(0, 2), i.find("at"));
+			assertEquals(bits(1), i.find("middle"));
+			assertEquals(bits(), i.find("errors"));
+		}
+	}
+
+	@Test
+	public void crlf() {
+		String content = "first\r\nError here\r\nlast\r\n";
+		TokenIndex index = build(content);
+		assertEquals(3, index.getLineCount());
+		assertEquals(7, index.getStart(1));
+		assertEquals(19, index.getStart(2));
+		assertEquals(content.length(), index.getEnd(2));
+		assertEquals(bits(1), index.find("error"));
+		assertEquals(bits(1), index.find("here\r"));
+		assertEquals(bits(2), index.find("last"));
+		assertEquals(bits(0), index.find("first\r\n"));
+	}
+
+	@Test
+	public void find() throws IOException {
+		for (int n = 0; n < 10; n++) {
+			List<String> lines = generateLines(1 + random.nextInt(2000));
+			TokenIndex index = build(lines, true);
+			TokenIndex stored = writeAndRead(index);
+
+			for (int k = 0; k < 200; k++) {
+				String text = randomText(lines);
+				BitSet candidates = index.find(text);
+				assertEquals("Stored index, " + text, candidates, stored.find(text));
+				for (int i = 0; i < lines.size(); i++) {
+					if (lines.get(i).toLowerCase().contains(text.toLowerCase())) {
+						assertTrue("Line " + i + " '" + lines.get(i) + "' is a candidate for '" + text + "'",
+								   candidates == null || candidates.get(i));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void lines() {
+		List<String> lines = generateLines(1000);
+		lines.add("the last line, without line break");
+		TokenIndex index = build(lines, false);
+
+		assertEquals(lines.size(), index.getLineCount());
+		long position = 0;
+		for (int i = 0; i < lines.size(); i++) {
+			assertEquals(position, index.getStart(i));
+			position += lines.get(i).length() + (i < lines.size() - 1 ? 1 : 0);
+			assertEquals(position, index.getEnd(i));
+		}
+	}
+
+	@Test
+	public void maxSize() {
+		TokenIndexBuilder builder = new TokenIndexBuilder(1024 * 1024);
+		byte[] line = "a line with some tokens\n".getBytes(StandardCharsets.US_ASCII);
+		assertFalse(builder.isFull());
+		for (int i = 0; i < 100000 && !builder.isFull(); i++) {
+			// Every line has a new token:
+			byte[] token = ("token" + i + "\n").getBytes(StandardCharsets.US_ASCII);
+			builder.add(ByteBuffer.wrap(line), line.length);
+			builder.add(ByteBuffer.wrap(token), token.length);
+		}
+		assertTrue(builder.isFull());
+	}
+
+	/**
+	 * Lines of words and separators, some of them with a token longer than MAX_TOKEN_LENGTH.
+	 */
+	private List<String> generateLines(int count) {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			StringBuilder line = new StringBuilder();
+			int words = random.nextInt(8);
+			for (int w = 0; w < words; w++) {
+				line.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+				if (random.nextInt(200) == 0) {
+					for (int j = 0; j < TokenIndex.MAX_TOKEN_LENGTH + 10; j++) {
+						line.append((char) ('a' + random.nextInt(3)));
+					}
+				} else {
+					line.append(WORDS[random.nextInt(WORDS.length)]);
+				}
+			}
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+
+	/**
+	 * A part of a line (the tokens at its ends can be incomplete), or some words.
+	 */
+	private String randomText(List<String> lines) {
+		if (random.nextBoolean()) {
+			String line = lines.get(random.nextInt(lines.size()));
+			int start = random.nextInt(line.length() + 1);
+			int end = start + random.nextInt(line.length() - start + 1);
+			if (end > start) {
+				return line.substring(start, end);
+			}
+		}
+		String text = WORDS[random.nextInt(WORDS.length)];
+		if (random.nextBoolean()) {
+			text += " " + WORDS[random.nextInt(WORDS.length)];
+		}
+		return text;
+	}
+
+	/**
+	 * Build the index, adding the lines in buffers of several lines.
+	 * @param lastLineBreak : if the last line ends with a line break
+	 */
+	private TokenIndex build(List<String> lines, boolean lastLineBreak) {
+		TokenIndexBuilder builder = new TokenIndexBuilder(Long.MAX_VALUE);
+		StringBuilder content = new StringBuilder(String.join("\n", lines));
+		if (lastLineBreak) {
+			content.append('\n');
+		}
+		int start = 0;
+		while (start < content.length()) {
+			int end = Math.min(content.length(), start + random.nextInt(2000));
+			end = content.indexOf("\n", end);
+			end = end == -1 ? content.length() : end + 1;
+			byte[] bytes = content.substring(start, end).getBytes(StandardCharsets.US_ASCII);
+			builder.add(ByteBuffer.wrap(bytes), bytes.length);
+			start = end;
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Build the index, adding every line in its own buffer.
+	 */
+	private static TokenIndex build(String content) {
+		TokenIndexBuilder builder = new TokenIndexBuilder(Long.MAX_VALUE);
+		int start = 0;
+		while (start < content.length()) {
+			int end = content.indexOf('\n', start);
+			end = end == -1 ? content.length() : end + 1;
+			byte[] bytes = content.substring(start, end).getBytes(StandardCharsets.US_ASCII);
+			builder.add(ByteBuffer.wrap(bytes), bytes.length);
+			start = end;
+		}
+		return builder.build();
+	}
+
+	private static BitSet bits(int... lines) {
+		BitSet bits = new BitSet();
+		for (int line : lines) {
+			bits.set(line);
+		}
+		return bits;
+	}
+
+	private static TokenIndex writeAndRead(TokenIndex index) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		index.write(new DataOutputStream(bytes));
+		return TokenIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+}
@@ -0,0 +1,169 @@
+package logbrowser.app.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The results of TrigramFilter in some edge cases, and compared with a naive search in generated logs: a text that
+ * is in a line must always be found, and most of the texts with a trigram that is not in the lines must not.
+ *
+ * @author rodriag
+ * @since 2.0
+ */
+public class TrigramFilterTest {
+
+	private Random random = new Random(42);
+
+	@Test
+	public void emptyContent() throws IOException {
+		TrigramFilter filter = new TrigramFilterBuilder().build();
+		for (TrigramFilter f : new TrigramFilter[] { filter, writeAndRead(filter) }) {
+			// Too short to know:
+			assertTrue(f.mayContain(""));
+			assertTrue(f.mayContain("ab"));
+			assertFalse(f.mayContain("abc"));
+		}
+	}
+
+	@Test
+	public void startAndEnd() throws IOException {
+		TrigramFilter filter = build("Error at the start\nthe end: error");
+		for (TrigramFilter f : new TrigramFilter[] { filter, writeAndRead(filter) }) {
+			assertTrue(f.mayContain("Err"));
+			assertTrue(f.mayContain("error at"));
+			assertTrue(f.mayContain("the end"));
+			assertTrue(f.mayContain("ROR"));
+			assertTrue(f.mayContain("end: ERROR"));
+			// The trigrams don't cross the lines:
+			assertFalse(f.mayContain("startthe"));
+		}
+	}
+
+	@Test
+	public void crlf() {
+		TrigramFilter filter = build("first line\r\nsecond line\r\n");
+		assertTrue(filter.mayContain("line\r"));
+		assertTrue(filter.mayContain("e\r"));
+		assertTrue(filter.mayContain("second"));
+		assertFalse(filter.mayContain("\r\nsecond"));
+		assertFalse(filter.mayContain("\rsecond"));
+	}
+
+	@Test
+	public void mayContain() throws IOException {
+		for (int n = 0; n < 10; n++) {
+			List<String> lines = new ArrayList<>();
+			for (int i = random.nextInt(1000); i >= 0; i--) {
+				lines.add(randomText("abcdefghABCDEFGH .:=", random.nextInt(80)));
+			}
+			TrigramFilter filter = build(lines);
+			TrigramFilter stored = writeAndRead(filter);
+
+			// Texts of the lines:
+			for (int k = 0; k < 1000; k++) {
+				String line = lines.get(random.nextInt(lines.size()));
+				int start = random.nextInt(line.length() + 1);
+				String text = line.substring(start, start + random.nextInt(line.length() - start + 1));
+				if (random.nextBoolean()) {
+					text = text.toUpperCase();
+				}
+				assertTrue("'" + text + "' is in the line '" + line + "'", filter.mayContain(text));
+				assertTrue("Stored filter, '" + text + "'", stored.mayContain(text));
+			}
+
+			// Other texts (with characters that are not in the lines):
+			int found = 0;
+			int absent = 0;
+			for (int k = 0; k < 1000; k++) {
+				String text = randomText("abcdefgh .:=xyz", 3 + random.nextInt(4));
+				assertEquals("Stored filter, '" + text + "'", filter.mayContain(text), stored.mayContain(text));
+				if (containsTrigrams(lines, text)) {
+					assertTrue("The trigrams of '" + text + "' are in the lines", filter.mayContain(text));
+				} else {
+					absent++;
+					if (filter.mayContain(text)) {
+						found++;
+					}
+				}
+			}
+			assertTrue(found + " false positives of " + absent, found <= absent / 10);
+		}
+	}
+
+	private String randomText(String alphabet, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return if every trigram of the text is in a line
+	 */
+	private static boolean containsTrigrams(List<String> lines, String text) {
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			String trigram = text.substring(i, i + 3).toLowerCase();
+			boolean found = false;
+			for (int j = 0; j < lines.size() && !found; j++) {
+				found = lines.get(j).toLowerCase().contains(trigram);
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Build the filter, adding the content one byte at a time, so every trigram is split between buffers.
+	 */
+	private static TrigramFilter build(String content) {
+		TrigramFilterBuilder builder = new TrigramFilterBuilder();
+		byte[] bytes = content.getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i < bytes.length; i++) {
+			builder.add(bytes, i, 1);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Build the filter, adding the content in buffers that don't end at a line break.
+	 */
+	private TrigramFilter build(List<String> lines) {
+		TrigramFilterBuilder builder = new TrigramFilterBuilder();
+		byte[] content = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.US_ASCII);
+		int start = 0;
+		while (start < content.length) {
+			int length = Math.min(content.length - start, 1 + random.nextInt(500));
+			if (random.nextBoolean()) {
+				builder.add(content, start, length);
+			} else {
+				ByteBuffer buffer = ByteBuffer.wrap(content, start, length).slice();
+				builder.add(buffer, length);
+			}
+			start += length;
+		}
+		return builder.build();
+	}
+
+	private static TrigramFilter writeAndRead(TrigramFilter filter) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		filter.write(new DataOutputStream(bytes));
+		return TrigramFilter.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+}